@@ -23,6 +23,7 @@ import gridsim.net.InfoPacket;
 import java.text.DecimalFormat;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Set;
 
@@ -48,6 +49,19 @@ public class DataCenter extends CloudSim {
 	protected double lastProcessTime;
 	protected HashMap<Integer,Double> debts;
 	protected LinkedList<Storage> storageList;
+	
+	/** Whether only the VMs that are due or changed are updated, see {@link #setEventIndexed(boolean)} */
+	protected boolean eventIndexed = Boolean.getBoolean("cloudsim.datacenter.indexed");
+	protected VMEventIndex vmEvents;
+	protected LinkedHashSet<VirtualMachine> changedVMs;
+	private VirtualMachine[] dueVMs = new VirtualMachine[16];
+	
+	/** Whether at most one VM_DATACENTER_EVENT is pending, see {@link #setCoalesceEvents(boolean)} */
+	protected boolean coalesceEvents = Boolean.getBoolean("cloudsim.datacenter.coalesce");
+	private double pendingEventTime = -1.0;
+	private long eventsScheduled = 0;
+	private long eventsSuppressed = 0;
+	private long eventsIgnored = 0;
 
 	/**
      * Allocates a new Datacenter object.
@@ -79,6 +93,8 @@ public class DataCenter extends CloudSim {
 		this.lastProcessTime=0.0;
 		this.debts=new HashMap<Integer,Double>();
 		this.storageList = storageList;
+		this.vmEvents = new VMEventIndex();
+		this.changedVMs = new LinkedHashSet<VirtualMachine>();
         init();
 	}
 	
@@ -154,6 +170,11 @@ public class DataCenter extends CloudSim {
             // process the received event
             processEvent(ev);
         }
+        
+        if (coalesceEvents) {
+        	System.out.println(super.get_name() + " VM events: scheduled=" + eventsScheduled
+        					   + ", suppressed=" + eventsSuppressed + ", ignored=" + eventsIgnored);
+        }
 
         // remove I/O entities created during construction of this entity
         super.terminateIOEntities();
@@ -219,6 +240,11 @@ public class DataCenter extends CloudSim {
                 processCloudletSubmit(ev, true);
                 break;
 
+                // Several new Cloudlets arrive together
+            case DatacenterTags.CLOUDLET_SUBMIT_BATCH:
+                processCloudletSubmitBatch(ev);
+                break;
+
                 // Cancels a previously submitted Cloudlet
             case GridSimTags.GRIDLET_CANCEL:
                 processCloudlet(ev, GridSimTags.GRIDLET_CANCEL);
@@ -307,6 +333,13 @@ public class DataCenter extends CloudSim {
            		break;
            	
            	case DatacenterTags.VM_DATACENTER_EVENT:
+           		if(coalesceEvents){
+           			if(GridSim.clock()!=pendingEventTime){//superseded by an earlier event
+           				eventsIgnored++;
+           				break;
+           			}
+           			pendingEventTime=-1.0;
+           		}
            		updateCloudletProcessing();
             	checkCloudletCompletion();
            		break;
@@ -526,6 +559,14 @@ public class DataCenter extends CloudSim {
     	int[] array = (int[]) ev.get_data();
     	int destId = array[0];
     	int vmID = array[1];
+    	if(eventIndexed){
+    		Host host = vmprovisioner.getHost(vmID,destId);
+    		VirtualMachine vm = (host==null)?null:host.getVM(destId,vmID);
+    		if(vm!=null){
+    			vmEvents.remove(vm);
+    			changedVMs.remove(vm);
+    		}
+    	}
  	    vmprovisioner.deallocateHostForVM(vmID,destId);
  	    if(ack){
            array = new int[3];
@@ -551,7 +592,27 @@ public class DataCenter extends CloudSim {
     	int vmId = array[1];
     	int destId = array[2];
     	
+    	VirtualMachine vm = null;
+    	if(eventIndexed){//progress up to now was made in the source host
+    		vm = getVMForChange(vmId,userId);
+    		vmEvents.remove(vm);
+    		changedVMs.remove(vm);
+    	}
+    	
     	boolean result = vmprovisioner.migrateVM(vmId,userId,destId);
+    	
+    	if(vm!=null){
+    		MachineList list = vmprovisioner.getResources();
+    		for(int i=0;i<list.size();i++){
+    			Host host = (Host) list.get(i);
+    			if(host.getVMs().contains(vm)){
+    				vm.setHost(host);
+    				changedVMs.add(vm);
+    				break;
+    			}
+    		}
+    		checkCloudletCompletion();
+    	}
  	    if(ack){
  	       array[0] = this.get_id();
            array[1] = vmId;
@@ -648,7 +709,7 @@ public class DataCenter extends CloudSim {
     	int destId = array[4];
     	
     	//get the cloudlet
-    	Cloudlet cl = (Cloudlet) vmprovisioner.getHost(vmId, userId).getVM(userId, vmId).getVMScheduler().cloudletCancel(cloudletId);
+    	Cloudlet cl = (Cloudlet) getVMForChange(vmId, userId).getVMScheduler().cloudletCancel(cloudletId);
     	
     	
     	boolean failed=false;
@@ -670,7 +731,7 @@ public class DataCenter extends CloudSim {
  
     		if (destId==this.get_id()){ //the cloudlet will migrate from one vm to another
     			//does the destination VM exist?
-    			VirtualMachine vm = vmprovisioner.getHost(vmDestId, userId).getVM(userId, vmDestId);
+    			VirtualMachine vm = getVMForChange(vmDestId, userId);
     			if(vm==null){
     				failed=true;
     			}else{
@@ -692,6 +753,7 @@ public class DataCenter extends CloudSim {
     		super.send(cl.getUserID(),GridSimTags.SCHEDULE_NOW,GridSimTags.GRIDLET_SUBMIT_ACK,data);
     	}
     	
+    	if(eventIndexed) checkCloudletCompletion();
     }
     
     /**
@@ -708,7 +770,52 @@ public class DataCenter extends CloudSim {
         try {
             // gets the Cloudlet object
             Cloudlet cl = (Cloudlet) ev.get_data();
+            if (!submitCloudlet(cl, ack)) {
+            	return;
+            }
+        }
+        catch (ClassCastException c) {
+            System.out.println(super.get_name() + ".processCloudletSubmit(): " + "ClassCastException error.");
+            c.printStackTrace();
+        }
+        
+    	checkCloudletCompletion();
+
+    }
 
+    /**
+     * Processes the submission of several Cloudlets. The Cloudlets already in execution are
+     * updated, and completions checked, once for the whole batch.
+     * @param ev  a Sim_event object carrying a <tt>Cloudlet[]</tt>
+     * @pre ev != null
+     * @post $none
+     */
+    protected void processCloudletSubmitBatch(Sim_event ev) {
+    	
+    	updateCloudletProcessing();
+    	
+        try {
+            Cloudlet[] cloudlets = (Cloudlet[]) ev.get_data();
+            for (int i = 0; i < cloudlets.length; i++) {
+            	submitCloudlet(cloudlets[i], false);
+            }
+        }
+        catch (ClassCastException c) {
+            System.out.println(super.get_name() + ".processCloudletSubmitBatch(): " + "ClassCastException error.");
+            c.printStackTrace();
+        }
+        
+    	checkCloudletCompletion();
+    }
+
+    /**
+     * Places a Cloudlet in the scheduler of its VM.
+     * @param cl  the Cloudlet
+     * @param ack  an acknowledgement
+     * @return false if the Cloudlet had already finished and was sent back
+     */
+    private boolean submitCloudlet(Cloudlet cl, boolean ack) {
+        try {
             // checks whether this Cloudlet has finished or not
             if (cl.isFinished() == true){
                 String name = GridSim.getEntityName(cl.getUserID());
@@ -734,7 +841,7 @@ public class DataCenter extends CloudSim {
 
                 super.send(cl.getUserID(), GridSimTags.SCHEDULE_NOW, GridSimTags.GRIDLET_RETURN, cl);
 
-                return;
+                return false;
             }
             
             // process this Cloudlet to this GridResource
@@ -745,31 +852,26 @@ public class DataCenter extends CloudSim {
              
             double fileTransferTime = predictFileTransferTime(cl.getRequiredFiles());//time to transfer the files
             
-            Host host = vmprovisioner.getHost(vmId,userId);
-            VirtualMachine vm = host.getVM(userId, vmId);
+            VirtualMachine vm = getVMForChange(vmId, userId);
             VMScheduler scheduler = vm.getVMScheduler();
             double capacity = scheduler.cloudletSubmit(cl,fileTransferTime);
             
-            if(capacity>0.0){//if this gridlet is in the exec queue
+            //in event indexed mode the next event of the VM is set by checkCloudletCompletion()
+            if(capacity>0.0 && !eventIndexed){//if this gridlet is in the exec queue
             	double estimatedFinishTime = (cl.getGridletLength()/(capacity*cl.getNumPE())); //time to process the gridlet
             	//System.out.println(estimatedFinishTime+"="+gl.getGridletLength()+"/("+capacity+"*"+gl.getNumPE()+")");
             	estimatedFinishTime+=fileTransferTime;
             	//System.out.println(GridSim.clock()+": Next event set to "+estimatedFinishTime);
-            	super.send(this.get_id(),estimatedFinishTime,DatacenterTags.VM_DATACENTER_EVENT);
+            	scheduleVMEvent(estimatedFinishTime);
             }
  
         }
-        catch (ClassCastException c) {
-            System.out.println(super.get_name() + ".processCloudletSubmit(): " + "ClassCastException error.");
-            c.printStackTrace();
-        }
         catch (Exception e) {
             System.out.println(super.get_name() + ".processCloudletSubmit(): " + "Exception error.");
             e.printStackTrace();
         }
         
-    	checkCloudletCompletion();
-
+        return true;
     }
 
     private double predictFileTransferTime(LinkedList requiredFiles) {
@@ -802,13 +904,14 @@ public class DataCenter extends CloudSim {
      */
 	protected void processCloudletResume(int cloudletId, int userId, int vmId, boolean ack) {
 		
-		double eventTime = vmprovisioner.getHost(vmId,userId).getVM(userId, vmId).getVMScheduler().cloudletResume(cloudletId);
+		double eventTime = getVMForChange(vmId, userId).getVMScheduler().cloudletResume(cloudletId);
         
 		boolean status = false;
 		if(eventTime>0.0){//if this gridlet is in the exec queue
 			status=true;
-			if(eventTime>GridSim.clock()) super.sim_schedule(this.get_id(),eventTime,DatacenterTags.VM_DATACENTER_EVENT);
+			if(!eventIndexed && eventTime>GridSim.clock()) scheduleVMEvent(eventTime-GridSim.clock());
         }
+		if(eventIndexed) checkCloudletCompletion();
 		
 		if(ack){
 			int[] array = new int[3];
@@ -836,7 +939,8 @@ public class DataCenter extends CloudSim {
      */
 	protected void processCloudletPause(int cloudletId, int userId, int vmId, boolean ack) {
 		
-		boolean status = vmprovisioner.getHost(vmId,userId).getVM(userId, vmId).getVMScheduler().cloudletPause(cloudletId);
+		boolean status = getVMForChange(vmId, userId).getVMScheduler().cloudletPause(cloudletId);
+		if(eventIndexed) checkCloudletCompletion();
 		
 		if(ack){
 			int[] array = new int[3];
@@ -863,7 +967,8 @@ public class DataCenter extends CloudSim {
      */
 	protected void processCloudletCancel(int cloudletId, int userId, int vmId) {
 		
-		Cloudlet cl = (Cloudlet) vmprovisioner.getHost(vmId,userId).getVM(userId, vmId).getVMScheduler().cloudletCancel(cloudletId);
+		Cloudlet cl = (Cloudlet) getVMForChange(vmId, userId).getVMScheduler().cloudletCancel(cloudletId);
+		if(eventIndexed) checkCloudletCompletion();
 		
         long gridletSize = 0;
         if (cl != null) {
@@ -891,6 +996,11 @@ public class DataCenter extends CloudSim {
      * @post $none
      */
 	protected void updateCloudletProcessing(){
+		
+		if(eventIndexed){
+			updateDueVMs();
+			return;
+		}
 
 		//if some time passed since last processing
 		if(GridSim.clock()>this.lastProcessTime){
@@ -908,7 +1018,7 @@ public class DataCenter extends CloudSim {
 			
 			//schedules an event to the next time, if valid
 			if (smallerTime>GridSim.clock()+0.01 && smallerTime!=Double.MAX_VALUE) {
-				super.sim_schedule(this.get_id(),smallerTime-GridSim.clock(),DatacenterTags.VM_DATACENTER_EVENT);
+				scheduleVMEvent(smallerTime-GridSim.clock());
 			}
 			this.lastProcessTime=GridSim.clock();
 		}
@@ -922,6 +1032,11 @@ public class DataCenter extends CloudSim {
      */
 	protected void checkCloudletCompletion(){
 		
+		if(eventIndexed){
+			updateChangedVMs();
+			return;
+		}
+		
 		MachineList list = vmprovisioner.getResources();
 		for(int i=0;i<list.size();i++){
 			Host host = (Host) list.get(i);
@@ -938,10 +1053,207 @@ public class DataCenter extends CloudSim {
 		}
 	}
 	
+	/**
+	 * Returns the VM that runs a cloudlet being changed. In event indexed mode the processing of the
+	 * VM is updated first, and it is updated again by {@link #checkCloudletCompletion()}.
+	 * @param vmId ID of the VM
+	 * @param userId ID of the VM's owner
+	 * @return the virtual machine
+	 * @pre $none
+	 * @post $none
+	 */
+	protected VirtualMachine getVMForChange(int vmId, int userId){
+		Host host = vmprovisioner.getHost(vmId,userId);
+		VirtualMachine vm = host.getVM(userId, vmId);
+		if(eventIndexed && vm!=null){
+			vm.setHost(host);
+			updateVMProcessing(vm);
+			changedVMs.add(vm);
+		}
+		return vm;
+	}
+	
+	/**
+	 * Updates the VMs whose next cloudlet is expected to finish by now and returns
+	 * their finished cloudlets. Used instead of updating every VM in event indexed mode.
+	 * @pre $none
+	 * @post $none
+	 */
+	private void updateDueVMs(){
+		double limit = GridSim.clock()+0.01;//same rounding margin as the VM schedulers
+		int count = 0;
+		while(vmEvents.peekTime()<limit){
+			VirtualMachine vm = vmEvents.poll();
+			if(count==dueVMs.length){
+				VirtualMachine[] newDueVMs = new VirtualMachine[count*2];
+				System.arraycopy(dueVMs,0,newDueVMs,0,count);
+				dueVMs = newDueVMs;
+			}
+			dueVMs[count++] = vm;
+		}
+		
+		for(int i=0;i<count;i++){
+			updateVMProcessing(dueVMs[i]);
+			returnFinishedCloudlets(dueVMs[i]);
+			dueVMs[i] = null;
+		}
+		this.lastProcessTime=GridSim.clock();
+	}
+	
+	/**
+	 * Updates the VMs changed by the current event, returns their finished cloudlets and
+	 * schedules the next event of this Datacenter.
+	 * @pre $none
+	 * @post $none
+	 */
+	private void updateChangedVMs(){
+		Iterator<VirtualMachine> iter = changedVMs.iterator();
+		while(iter.hasNext()){
+			VirtualMachine vm = iter.next();
+			updateVMProcessing(vm);
+			returnFinishedCloudlets(vm);
+		}
+		changedVMs.clear();
+		
+		double time = vmEvents.peekTime();
+		if(time!=Double.MAX_VALUE && time>GridSim.clock()){
+			scheduleVMEvent(time-GridSim.clock());
+		}
+	}
+	
+	/**
+	 * Updates the processing of the cloudlets in one VM and its position in the event index
+	 * @param vm the VM, with its host set
+	 * @pre vm != $null
+	 * @post $none
+	 */
+	private void updateVMProcessing(VirtualMachine vm){
+		double time = vm.getVMScheduler().updateVMProcessing(GridSim.clock(),vm.getHost().getMIPSShare(vm.getVmId(),vm.getUserId()));
+		if(time>0.0 && time!=Double.MAX_VALUE){
+			vmEvents.update(vm,time);
+		} else {
+			vmEvents.remove(vm);
+		}
+	}
+	
+	/**
+	 * Sends the finished cloudlets of a VM back to their users
+	 * @param vm the VM
+	 * @pre vm != $null
+	 * @post $none
+	 */
+	private void returnFinishedCloudlets(VirtualMachine vm){
+		VMScheduler scheduler = vm.getVMScheduler();
+		while (scheduler.isFinishedCloudlets()){
+			Cloudlet cl = scheduler.getNextFinishedCloudlet();
+			if(cl!=null){
+				super.send(cl.getUserID(),GridSimTags.SCHEDULE_NOW,GridSimTags.GRIDLET_RETURN,cl);
+			}
+		}
+	}
+	
+	/**
+	 * Schedules a VM_DATACENTER_EVENT to this Datacenter. When events are coalesced, it is not
+	 * scheduled if an event that is due no later is already pending; if it is due earlier, the
+	 * pending event is superseded and will be ignored when it arrives.
+	 * @param delay time from now until the event
+	 * @pre delay >= 0.0
+	 * @post $none
+	 */
+	protected void scheduleVMEvent(double delay){
+		if(coalesceEvents){
+			double time = GridSim.clock()+delay;
+			if(pendingEventTime>GridSim.clock() && pendingEventTime<=time){
+				eventsSuppressed++;
+				return;
+			}
+			pendingEventTime = time;
+		}
+		eventsScheduled++;
+		super.sim_schedule(this.get_id(),delay,DatacenterTags.VM_DATACENTER_EVENT);
+	}
+	
+	/**
+	 * Sets whether at most one VM_DATACENTER_EVENT is kept pending, for the earliest time
+	 * this Datacenter needs to wake up, instead of one event per submitted cloudlet and per
+	 * update. The default is taken from the system property <tt>cloudsim.datacenter.coalesce</tt>.
+	 * It must be set before the simulation starts.
+	 * @param coalesceEvents $true to coalesce the events
+	 * @pre $none
+	 * @post $none
+	 */
+	public void setCoalesceEvents(boolean coalesceEvents){
+		this.coalesceEvents = coalesceEvents;
+	}
+	
+	/**
+	 * Returns the number of VM_DATACENTER_EVENTs this Datacenter scheduled to itself
+	 * @return number of events scheduled
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	public long getVMEventsScheduled(){
+		return eventsScheduled;
+	}
+	
+	/**
+	 * Returns the number of VM_DATACENTER_EVENTs not scheduled because an earlier one was pending
+	 * @return number of events suppressed
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	public long getVMEventsSuppressed(){
+		return eventsSuppressed;
+	}
+	
+	/**
+	 * Returns the number of VM_DATACENTER_EVENTs ignored because an earlier one superseded them
+	 * @return number of events ignored
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	public long getVMEventsIgnored(){
+		return eventsIgnored;
+	}
+	
+	/**
+	 * Sets whether the Datacenter keeps an index of the next event of each VM. If it does,
+	 * each event only updates the VMs that are due or that the event changes, so its cost
+	 * depends on the number of active VMs instead of all the VMs. The default is taken from
+	 * the system property <tt>cloudsim.datacenter.indexed</tt>. It must be set before the
+	 * simulation starts.
+	 * @param eventIndexed $true to index the VM events
+	 * @pre $none
+	 * @post $none
+	 */
+	public void setEventIndexed(boolean eventIndexed){
+		this.eventIndexed = eventIndexed;
+	}
+	
+	/**
+	 * Returns whether the Datacenter keeps an index of the next event of each VM
+	 * @return $true if the VM events are indexed
+	 * @pre $none
+	 * @post $none
+	 */
+	public boolean isEventIndexed(){
+		return eventIndexed;
+	}
+	
 	public VirtualMachineList getVMList(){
 		return null;
 	}
 	
+	/**
+	 * Returns the VM provisioner that places the VMs of this Datacenter on its hosts
+	 * @return the VM provisioner
+	 * @pre $none
+	 * @post $none
+	 */
+	public VMProvisioner getVMProvisioner(){
+		return vmprovisioner;
+	}
+	
 	   /**
      * Adds a file into the resource's storage before the experiment starts.
      * If the file is a master file, then it will be registered to the RC when
@@ -86,6 +86,12 @@ public class DatacenterTags {
      * Denotes an internal event generated in a Broker
      */
     public static final int VM_BROKER_EVENT = VMBASE + 22;
+    
+    /**
+     * Denotes the submission of several cloudlets at once. The data is a <tt>Cloudlet[]</tt>
+     * and no acknowledgement is sent.
+     */
+    public static final int CLOUDLET_SUBMIT_BATCH = VMBASE + 23;
         
 	protected DatacenterTags(){
 		
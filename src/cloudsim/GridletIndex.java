@@ -0,0 +1,152 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package cloudsim;
+
+
+/**
+ * GridletIndex maps the ID of each gridlet held by a VM scheduler to where it is:
+ * which of the scheduler's lists, and its slot in that list. It uses open addressing
+ * with linear probing over primitive arrays, and removal shifts the following entries
+ * back instead of leaving tombstones.
+ *
+ * @invariant $none
+ */
+class GridletIndex {
+
+	private static final int INITIAL_CAPACITY = 32;
+
+	private int[] keys;
+	private int[] locations;
+	private int mask;
+	private int size;
+
+	/**
+	 * Creates an empty index
+	 * @pre $none
+	 * @post $none
+	 */
+	GridletIndex() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		locations = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			locations[i] = -1;
+		}
+		mask = capacity - 1;
+	}
+
+	private int home(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Returns where a gridlet is
+	 * @param glId ID of the gridlet
+	 * @return the location stored for the gridlet, -1 if it is not in the index
+	 * @pre $none
+	 * @post $none
+	 */
+	int get(int glId) {
+		int slot = home(glId);
+		while (locations[slot] >= 0) {
+			if (keys[slot] == glId) {
+				return locations[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Stores where a gridlet is, replacing its previous location
+	 * @param glId ID of the gridlet
+	 * @param location location of the gridlet
+	 * @pre location >= 0
+	 * @post $none
+	 */
+	void put(int glId, int location) {
+		if (size >= (keys.length >> 1)) {
+			rehash(keys.length * 2);
+		}
+
+		int slot = home(glId);
+		while (locations[slot] >= 0 && keys[slot] != glId) {
+			slot = (slot + 1) & mask;
+		}
+		if (locations[slot] < 0) {
+			keys[slot] = glId;
+			size++;
+		}
+		locations[slot] = location;
+	}
+
+	/**
+	 * Removes a gridlet from the index, if it is there
+	 * @param glId ID of the gridlet
+	 * @pre $none
+	 * @post $none
+	 */
+	void remove(int glId) {
+		int slot = home(glId);
+		while (locations[slot] >= 0 && keys[slot] != glId) {
+			slot = (slot + 1) & mask;
+		}
+		if (locations[slot] < 0) {
+			return;
+		}
+		locations[slot] = -1;
+		size--;
+
+		//shift back any following entries that would no longer be reachable from their home slot
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (locations[next] >= 0) {
+			int h = home(keys[next]);
+			if (((next - h) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				locations[gap] = locations[next];
+				locations[next] = -1;
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldLocations = locations;
+
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldLocations[i] >= 0) {
+				int slot = home(oldKeys[i]);
+				while (locations[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				locations[slot] = oldLocations[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of gridlets in the index
+	 * @return number of gridlets
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -256,6 +256,18 @@ public class Host extends Machine {
 		return null;
 	}
 	
+	/**
+	 * Returns the MIPS share of each PE that is available to a VM running in this host
+	 * @param vmId ID of the VM
+	 * @param userId ID of VM's owner
+	 * @return an array containing the amount of MIPS of each pe that is available to the VM
+	 * @pre the VM is running in this host
+	 * @post $none
+	 */
+	public double[] getMIPSShare(int vmId, int userId){
+		return allocationPolicy.getMIPSShare(vmId, userId);
+	}
+	
 	/**
 	 * Returns a list with all the VMs in this host
 	 * @return list of VMs
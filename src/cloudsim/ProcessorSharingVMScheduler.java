@@ -0,0 +1,491 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+
+package cloudsim;
+
+import gridsim.GridSim;
+import gridsim.Gridlet;
+import gridsim.ResGridlet;
+
+
+/**
+ * ProcessorSharingVMScheduler executes gridlets time-shared in the VM, like
+ * {@link TimeSharedVMScheduler}, but without updating every gridlet on each event.
+ *
+ * All the gridlets in execution progress at the same rate per PE, so the scheduler
+ * keeps a virtual time: the amount of work each PE has done since the VM started.
+ * A gridlet finishes when the virtual time reaches its finish point, which is the
+ * virtual time when it entered execution plus its length per PE. The finish points
+ * are kept in a min-heap, so an update costs O(1) plus O(log n) per finished gridlet,
+ * and the progress of a gridlet is only calculated when it leaves execution.
+ * A {@link GridletIndex} shared by the heap and the paused and finished lists
+ * finds a gridlet by its ID in O(1).
+ *
+ * @invariant $none
+ */
+public class ProcessorSharingVMScheduler extends VMScheduler {
+
+	/** Virtual time above which the finish points are moved back to keep their precision */
+	private static final double REBASE_THRESHOLD = 1.0e9;
+
+	/** Lists of the gridlets, as recorded in the gridlet index */
+	private static final int EXEC = 0;
+	private static final int PAUSED = 1;
+	private static final int FINISHED = 2;
+
+	protected ResGridlet[] execGridlets;
+	protected double[] finishPoints;
+	protected int[] execPEs;
+	protected int execCount;
+	protected int pesInUse;
+	protected double virtualTime;
+	protected GridletIndex gridletIndex;
+	protected ResGridletTable gridletPausedList;
+	protected ResGridletTable gridletFinishedList;
+	protected int currentCPUs;
+	protected double[] currentMIPSShare;
+
+	/**
+	 * Creates a new ProcessorSharingVMScheduler object. This method must be invoked
+	 * before starting the actual simulation.
+	 *
+	 * @pre $none
+	 * @post $none
+	 */
+	public ProcessorSharingVMScheduler() {
+		super();
+		this.execGridlets = new ResGridlet[16];
+		this.finishPoints = new double[16];
+		this.execPEs = new int[16];
+		this.execCount=0;
+		this.pesInUse=0;
+		this.virtualTime=0.0;
+		this.gridletIndex = new GridletIndex();
+		this.gridletPausedList = new ResGridletTable(gridletIndex,PAUSED);
+		this.gridletFinishedList = new ResGridletTable(gridletIndex,FINISHED);
+		this.currentCPUs=0;
+	}
+
+	/**
+	 * Updates the processing of gridlets running under management of this scheduler.
+	 * @param currentTime current simulation time
+	 * @param mipsShare array with MIPS share of each processor available to the scheduler
+	 * @return time predicted completion time of the earliest finishing gridlet, or 0
+	 * 				if there is no next events
+	 * @pre currentTime >= 0
+	 * @post $none
+	 */
+	@Override
+	public double updateVMProcessing(double currentTime, double[]mipsShare) {
+
+		this.currentMIPSShare=mipsShare;
+		double capacity = getCapacityPerPE();
+
+		if(execCount==0) {
+			this.virtualTime=0.0;
+			this.previousTime=currentTime;
+			return 0.0;
+		}
+
+		virtualTime+=capacity*(currentTime-previousTime);
+		this.previousTime=currentTime;
+
+		//finishes the gridlets whose finish point was reached, or is
+		//within the same rounding margin as the other schedulers
+		boolean finished = false;
+		while(execCount>0 && finishPoints[0]<virtualTime+0.01*capacity){
+			ResGridlet rgl = execGridlets[0];
+			removeExec(0);
+			rgl.updateGridletFinishedSoFar(rgl.getRemainingGridletLength());
+			gridletFinish(rgl);
+			finished = true;
+		}
+
+		if(execCount==0) {
+			return Double.MAX_VALUE;
+		}
+		if(finished) {//the remaining gridlets have a larger share now
+			capacity = getCapacityPerPE();
+		}
+		if(virtualTime>REBASE_THRESHOLD) {
+			rebase();
+		}
+
+		return currentTime+(finishPoints[0]-virtualTime)/capacity;
+	}
+
+	/**
+	 * Cancels execution of a gridlet
+	 * @param glId ID of the gridlet being cancealed
+	 * @return the canceled gridlet, $null if not found
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public Cloudlet cloudletCancel(int glId) {
+
+		//First, looks in the finished queue
+		int position = gridletFinishedList.find(glId);
+		if (position>=0){
+			return (Cloudlet) gridletFinishedList.remove(position).getGridlet();
+		}
+
+		//Then searches in the exec list
+		int slot = findExec(glId);
+		if (slot>=0){
+			ResGridlet rgl = takeExec(slot);
+			if (rgl.getRemainingGridletLength() == 0.0) {
+				gridletFinish(rgl);
+			} else {
+				rgl.setGridletStatus(Gridlet.CANCELED);
+			}
+			return (Cloudlet) rgl.getGridlet();
+		}
+
+		//Now, looks in the paused queue
+		position = gridletPausedList.find(glId);
+		if (position>=0){
+			ResGridlet rgl = gridletPausedList.remove(position);
+			rgl.setGridletStatus(Gridlet.CANCELED);
+			return (Cloudlet) rgl.getGridlet();
+		}
+
+		return null;
+
+	}
+
+	/**
+	 * Pauses execution of a gridlet
+	 * @param glId ID of the gridlet being paused
+	 * @return $true if gridlet paused, $false otherwise
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public boolean cloudletPause(int glId) {
+
+		int slot = findExec(glId);
+		if (slot>=0){
+
+			//remove gridlet from the exec list and put it in the paused list
+			ResGridlet rgl = takeExec(slot);
+			if (rgl.getRemainingGridletLength() == 0.0) {
+				gridletFinish(rgl);
+			} else {
+				rgl.setGridletStatus(Gridlet.PAUSED);
+				gridletPausedList.add(rgl);
+			}
+			return true;
+
+		}
+		return false;
+
+	}
+
+	/**
+	 * Resumes execution of a paused gridlet
+	 * @param glId ID of the gridlet being resumed
+	 * @return expected finish time of the gridlet, 0.0 if queued
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public double cloudletResume(int glId) {
+
+		int position = gridletPausedList.find(glId);
+		if (position>=0){
+			ResGridlet rgl = gridletPausedList.remove(position);
+			rgl.setGridletStatus(Gridlet.INEXEC);
+			addExec(rgl);
+
+			double capacity = getCapacityPerPE();
+			double remainingLength = rgl.getRemainingGridletLength();
+			return GridSim.clock()+(remainingLength/(capacity*rgl.getNumPE()));
+		}
+
+		return 0.0;
+	}
+
+	/**
+	 * Receives an gridlet to be executed in the VM managed by this scheduler
+	 * @param gl the submited gridlet
+	 * @param fileTransferTime time required to move the required files from the SAN to the VM
+	 * @return expected finish time of this gridlet
+	 * @pre gl != null
+	 * @post $none
+	 */
+	@Override
+	public double cloudletSubmit(Cloudlet gl, double fileTransferTime) {
+
+		ResGridlet rgl = new ResGridlet(gl);
+		rgl.setGridletStatus(Gridlet.INEXEC);
+		for(int i=0;i<gl.getNumPE();i++){
+			rgl.setMachineAndPEID(0,i);
+		}
+
+		double size = rgl.getGridletLength();
+		size*=rgl.getNumPE();
+		rgl.getGridlet().setGridletLength(size);
+
+		//use the current capacity to estimate the extra amount of
+		//time to file transferring. It must be added to the gridlet length
+		double capacity = 0.0;
+		int cpus=0;
+		for(int i=0;i<currentMIPSShare.length;i++){
+			capacity+=currentMIPSShare[i];
+			if(currentMIPSShare[i]>0)cpus++;
+		}
+		double extraSize=(capacity/cpus)*fileTransferTime;
+		double length = gl.getGridletLength();
+		length+=extraSize;
+		gl.setGridletLength(length);
+
+		addExec(rgl);
+
+		//available capacity for each gridlet
+		return getCapacityPerPE();
+	}
+
+	/**
+	 * Gets the status of a gridlet
+	 * @param glId ID of the gridlet
+	 * @return status of the gridlet, -1 if gridlet not found
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public int cloudletstatus(int glId) {
+
+		int slot = findExec(glId);
+		if (slot>=0) return execGridlets[slot].getGridletStatus();
+
+		int position = gridletPausedList.find(glId);
+		if (position>=0) return gridletPausedList.get(position).getGridletStatus();
+
+		return -1;
+	}
+
+	/**
+	 * Informs about completion of some gridlet in the VM managed
+	 * by this scheduler
+	 * @return $true if there is at least one finished gridlet; $false otherwise
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public boolean isFinishedCloudlets() {
+		return gridletFinishedList.size()>0;
+	}
+
+	/**
+	 * Returns the next gridlet in the finished list, $null if this list is empty
+	 * @return a finished gridlet
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public Cloudlet getNextFinishedCloudlet() {
+		if(gridletFinishedList.size()>0){
+			return (Cloudlet) gridletFinishedList.removeFirst().getGridlet();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the number of cloudlets runnning in the virtual machine
+	 * @return number of cloudlets runnning
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public int runningCloudlets() {
+		return this.execCount;
+	}
+
+	/**
+	 * Returns one cloudlet to migrate to another vm
+	 * @return one running cloudlet, $null if there is none
+	 * @pre $none
+	 * @post $none
+	 */
+	@Override
+	public Cloudlet migrateCloudlet() {
+		if (execCount==0) return null;
+		return (Cloudlet) takeExec(execCount-1).getGridlet();
+	}
+
+	/**
+	 * Processes a finished gridlet
+	 * @param rgl finished gridlet
+	 * @pre rgl != $null
+	 * @post $none
+	 */
+	private void gridletFinish(ResGridlet rgl) {
+		rgl.setGridletStatus(Gridlet.SUCCESS);
+        rgl.finalizeGridlet();
+        gridletFinishedList.add(rgl);
+	}
+
+	/**
+	 * Adds a gridlet to the execution heap, with its finish point calculated
+	 * from the work it still has to do
+	 * @param rgl the gridlet
+	 * @pre rgl != $null
+	 * @post $none
+	 */
+	private void addExec(ResGridlet rgl) {
+		if(execCount==execGridlets.length){
+			ResGridlet[] newGridlets = new ResGridlet[execCount*2];
+			double[] newPoints = new double[execCount*2];
+			int[] newPEs = new int[execCount*2];
+			System.arraycopy(execGridlets,0,newGridlets,0,execCount);
+			System.arraycopy(finishPoints,0,newPoints,0,execCount);
+			System.arraycopy(execPEs,0,newPEs,0,execCount);
+			execGridlets = newGridlets;
+			finishPoints = newPoints;
+			execPEs = newPEs;
+		}
+		int pes = rgl.getNumPE();
+		int slot = execCount++;
+		execGridlets[slot] = rgl;
+		finishPoints[slot] = virtualTime+rgl.getRemainingGridletLength()/pes;
+		execPEs[slot] = pes;
+		pesInUse+=pes;
+		siftUp(slot);
+	}
+
+	/**
+	 * Removes a gridlet from the execution heap and records the work it has done
+	 * @param slot position of the gridlet in the heap
+	 * @return the removed gridlet
+	 * @pre slot >= 0 && slot < execCount
+	 * @post $none
+	 */
+	private ResGridlet takeExec(int slot) {
+		ResGridlet rgl = execGridlets[slot];
+		double remaining = (finishPoints[slot]-virtualTime)*execPEs[slot];
+		if(remaining<0.0) remaining=0.0;
+		rgl.updateGridletFinishedSoFar(rgl.getRemainingGridletLength()-remaining);
+		removeExec(slot);
+		return rgl;
+	}
+
+	/**
+	 * Removes a gridlet from the execution heap. The last gridlet takes its slot.
+	 * @param slot position of the gridlet in the heap
+	 * @pre slot >= 0 && slot < execCount
+	 * @post $none
+	 */
+	private void removeExec(int slot) {
+		gridletIndex.remove(execGridlets[slot].getGridletID());
+		pesInUse-=execPEs[slot];
+		execCount--;
+		if(slot<execCount){
+			double point = finishPoints[slot];
+			move(execCount,slot);
+			if(finishPoints[slot]<point){
+				siftUp(slot);
+			} else {
+				siftDown(slot);
+			}
+		}
+		execGridlets[execCount] = null;
+	}
+
+	private void siftUp(int slot) {
+		ResGridlet rgl = execGridlets[slot];
+		double point = finishPoints[slot];
+		int pes = execPEs[slot];
+		while(slot>0){
+			int parent = (slot-1)>>>1;
+			if(finishPoints[parent]<=point) break;
+			move(parent,slot);
+			slot = parent;
+		}
+		place(rgl,point,pes,slot);
+	}
+
+	private void siftDown(int slot) {
+		ResGridlet rgl = execGridlets[slot];
+		double point = finishPoints[slot];
+		int pes = execPEs[slot];
+		int half = execCount>>>1;
+		while(slot<half){
+			int child = 2*slot+1;
+			if(child+1<execCount && finishPoints[child+1]<finishPoints[child]) child++;
+			if(point<=finishPoints[child]) break;
+			move(child,slot);
+			slot = child;
+		}
+		place(rgl,point,pes,slot);
+	}
+
+	private void move(int from, int to) {
+		place(execGridlets[from],finishPoints[from],execPEs[from],to);
+	}
+
+	private void place(ResGridlet rgl, double point, int pes, int slot) {
+		execGridlets[slot] = rgl;
+		finishPoints[slot] = point;
+		execPEs[slot] = pes;
+		gridletIndex.put(rgl.getGridletID(),ResGridletTable.location(EXEC,slot));
+	}
+
+	/**
+	 * Moves the virtual time and the finish points back to zero, so that they keep their
+	 * precision in long simulations. The order of the heap does not change.
+	 * @pre $none
+	 * @post virtualTime == 0.0
+	 */
+	private void rebase() {
+		for(int i=0;i<execCount;i++){
+			finishPoints[i]-=virtualTime;
+		}
+		virtualTime=0.0;
+	}
+
+	/**
+	 * Finds a gridlet in the execution heap
+	 * @param glId ID of the gridlet
+	 * @return position of the gridlet in the heap, -1 if it is not in execution
+	 * @pre $none
+	 * @post $none
+	 */
+	private int findExec(int glId) {
+		int location = gridletIndex.get(glId);
+		if(location<0 || ResGridletTable.listOf(location)!=EXEC) return -1;
+		return ResGridletTable.slotOf(location);
+	}
+
+	/**
+	 * Calculates the capacity available to each PE in use, from the current MIPS share
+	 * and the PEs in use, and updates the number of CPUs
+	 * @return capacity of each PE in MIPS
+	 * @pre currentMIPSShare != $null
+	 * @post $none
+	 */
+	private double getCapacityPerPE() {
+		double capacity = 0.0;
+		int cpus=0;
+		for(int i=0;i<currentMIPSShare.length;i++){
+			capacity+=currentMIPSShare[i];
+			if(currentMIPSShare[i]>0)cpus++;
+		}
+		currentCPUs=cpus;
+
+		if(pesInUse>currentCPUs){
+			return capacity/pesInUse;
+		} else {
+			return capacity/currentCPUs;
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package cloudsim;
+
+import gridsim.ResGridlet;
+
+
+/**
+ * ResGridletTable is one of the lists of gridlets of a VM scheduler (paused,
+ * finished, waiting...). Gridlets are kept in an array in the order they were
+ * added, and the slot of each one is recorded in a {@link GridletIndex} shared by
+ * all the lists of the scheduler, so a gridlet is found and removed in O(1).
+ * A removed gridlet leaves an empty slot, and the array is compacted when it
+ * fills up.
+ *
+ * @invariant $none
+ */
+class ResGridletTable {
+
+	/** Number of bits of a location used for the list */
+	private static final int LIST_BITS = 2;
+	private static final int LIST_MASK = (1 << LIST_BITS) - 1;
+
+	private final GridletIndex index;
+	private final int list;
+	private ResGridlet[] gridlets;
+	private int start;
+	private int end;
+	private int size;
+
+	/**
+	 * Creates an empty list
+	 * @param index index shared by the lists of the scheduler
+	 * @param list number of this list in the scheduler, below 2^LIST_BITS
+	 * @pre index != $null
+	 * @post $none
+	 */
+	ResGridletTable(GridletIndex index, int list) {
+		this.index = index;
+		this.list = list;
+		this.gridlets = new ResGridlet[16];
+		this.start = 0;
+		this.end = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Encodes the location of a gridlet for the {@link GridletIndex}
+	 * @param list number of the list
+	 * @param slot slot in the list
+	 * @return the location
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	static int location(int list, int slot) {
+		return (slot << LIST_BITS) | list;
+	}
+
+	/**
+	 * Decodes the list of a location
+	 * @param location a location from the {@link GridletIndex}
+	 * @return number of the list
+	 * @pre location >= 0
+	 * @post $none
+	 */
+	static int listOf(int location) {
+		return location & LIST_MASK;
+	}
+
+	/**
+	 * Decodes the slot of a location
+	 * @param location a location from the {@link GridletIndex}
+	 * @return slot in the list
+	 * @pre location >= 0
+	 * @post $none
+	 */
+	static int slotOf(int location) {
+		return location >>> LIST_BITS;
+	}
+
+	/**
+	 * Adds a gridlet at the end of the list
+	 * @param rgl the gridlet
+	 * @pre rgl != $null
+	 * @post $none
+	 */
+	void add(ResGridlet rgl) {
+		if (end == gridlets.length) {
+			compact();
+		}
+		gridlets[end] = rgl;
+		index.put(rgl.getGridletID(), location(list, end));
+		end++;
+		size++;
+	}
+
+	/**
+	 * Finds a gridlet in this list
+	 * @param glId ID of the gridlet
+	 * @return slot of the gridlet, -1 if it is not in this list
+	 * @pre $none
+	 * @post $none
+	 */
+	int find(int glId) {
+		int location = index.get(glId);
+		if (location < 0 || listOf(location) != list) {
+			return -1;
+		}
+		return slotOf(location);
+	}
+
+	/**
+	 * Returns the gridlet in a slot
+	 * @param slot the slot, between {@link #start()} and {@link #end()}
+	 * @return the gridlet, $null if the slot is empty
+	 * @pre $none
+	 * @post $none
+	 */
+	ResGridlet get(int slot) {
+		return gridlets[slot];
+	}
+
+	/**
+	 * Removes the gridlet in a slot. The other gridlets keep their order and slots.
+	 * @param slot slot of the gridlet
+	 * @return the removed gridlet
+	 * @pre get(slot) != $null
+	 * @post $none
+	 */
+	ResGridlet remove(int slot) {
+		ResGridlet rgl = gridlets[slot];
+		gridlets[slot] = null;
+		index.remove(rgl.getGridletID());
+		size--;
+		if (size == 0) {
+			start = 0;
+			end = 0;
+		} else if (slot == start) {
+			while (gridlets[start] == null) {
+				start++;
+			}
+		}
+		return rgl;
+	}
+
+	/**
+	 * Removes the first gridlet in the list
+	 * @return the gridlet, $null if the list is empty
+	 * @pre $none
+	 * @post $none
+	 */
+	ResGridlet removeFirst() {
+		if (size == 0) {
+			return null;
+		}
+		return remove(start);
+	}
+
+	/**
+	 * Returns the first slot that may hold a gridlet
+	 * @return the slot
+	 * @pre $none
+	 * @post $none
+	 */
+	int start() {
+		return start;
+	}
+
+	/**
+	 * Returns the slot after the last gridlet
+	 * @return the slot
+	 * @pre $none
+	 * @post $none
+	 */
+	int end() {
+		return end;
+	}
+
+	/**
+	 * Returns the number of gridlets in the list
+	 * @return number of gridlets
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Moves the gridlets to the beginning of the array, growing it if it is more than
+	 * half full, and records their new slots
+	 * @pre $none
+	 * @post $none
+	 */
+	private void compact() {
+		ResGridlet[] target = (size > gridlets.length / 2) ? new ResGridlet[gridlets.length * 2] : gridlets;
+		int slot = 0;
+		for (int i = start; i < end; i++) {
+			ResGridlet rgl = gridlets[i];
+			if (rgl != null) {
+				gridlets[i] = null;
+				target[slot] = rgl;
+				index.put(rgl.getGridletID(), location(list, slot));
+				slot++;
+			}
+		}
+		gridlets = target;
+		start = 0;
+		end = slot;
+	}
+}
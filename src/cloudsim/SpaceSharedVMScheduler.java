@@ -10,12 +10,9 @@
 
 package cloudsim;
 
-import java.util.Iterator;
-
 import gridsim.GridSim;
 import gridsim.Gridlet;
 import gridsim.ResGridlet;
-import gridsim.ResGridletList;
 
 
 /**
@@ -26,16 +23,26 @@ import gridsim.ResGridletList;
  * before gridlet execution. I.e., even though gridlets must wait for CPU,
  * data transfer happens as soon as gridlets are submitted.
  * 
+ * The lists of gridlets share a {@link GridletIndex}, so a gridlet is found
+ * by its ID in O(1) whichever list it is in.
+ * 
  * @author Rodrigo N. Calheiros
  * @since CloudSim Toolkit 1.0 Beta
  * @invariant $none
  */
 public class SpaceSharedVMScheduler extends VMScheduler {
 	
-	protected ResGridletList gridletWaitingList;
-	protected ResGridletList gridletExecList;
-	protected ResGridletList gridletPausedList;
-	protected ResGridletList gridletFinishedList;
+	/** Lists of the gridlets, as recorded in the gridlet index */
+	private static final int EXEC = 0;
+	private static final int WAITING = 1;
+	private static final int PAUSED = 2;
+	private static final int FINISHED = 3;
+	
+	protected GridletIndex gridletIndex;
+	protected ResGridletTable gridletWaitingList;
+	protected ResGridletTable gridletExecList;
+	protected ResGridletTable gridletPausedList;
+	protected ResGridletTable gridletFinishedList;
 	protected int currentCPUs;
 	protected int usedPEs;
 	protected double[] currentMIPSShare;
@@ -49,10 +56,11 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 */
 	public SpaceSharedVMScheduler() {
 		super();
-		this.gridletWaitingList = new ResGridletList();
-		this.gridletExecList = new ResGridletList();
-		this.gridletPausedList = new ResGridletList();
-		this.gridletFinishedList = new ResGridletList();
+		this.gridletIndex = new GridletIndex();
+		this.gridletWaitingList = new ResGridletTable(gridletIndex,WAITING);
+		this.gridletExecList = new ResGridletTable(gridletIndex,EXEC);
+		this.gridletPausedList = new ResGridletTable(gridletIndex,PAUSED);
+		this.gridletFinishedList = new ResGridletTable(gridletIndex,FINISHED);
 		this.usedPEs=0;
 		this.currentCPUs=0;
 	}
@@ -66,7 +74,6 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 * @pre currentTime >= 0
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double updateVMProcessing(double currentTime, double[]mipsShare) {
 		
@@ -82,14 +89,12 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 		currentCPUs=cpus;
 		capacity/=cpus; //average capacity of each cpu
 		
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){//each machine in the exec list has the same amount of cpu
-			ResGridlet rgl = (ResGridlet) iter.next();		
-			rgl.updateGridletFinishedSoFar(capacity*timeSpam*rgl.getNumPE());
+		for(int i=gridletExecList.start();i<gridletExecList.end();i++){//each machine in the exec list has the same amount of cpu
+			ResGridlet rgl = gridletExecList.get(i);
+			if(rgl!=null) rgl.updateGridletFinishedSoFar(capacity*timeSpam*rgl.getNumPE());
 		}
 
 		double nextEvent=Double.MAX_VALUE;
-		int i=0;
 		
 		if(gridletExecList.size()==0) {//no more gridlets in this scheduler
 			this.previousTime=currentTime;
@@ -97,35 +102,40 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 		}
 		
 		//updates each gridlet
-        while (i<gridletExecList.size()){
-            ResGridlet obj = (ResGridlet) gridletExecList.get(i);
+		int finished=0;
+        for (int i=gridletExecList.start();i<gridletExecList.end();i++){
+            ResGridlet obj = gridletExecList.get(i);
+            if (obj==null) continue;
             double remainingLength = obj.getRemainingGridletLength();
 
             if (remainingLength==0.0){//finished: remove from the list
-                gridletExecList.remove(obj);
+                gridletExecList.remove(i);
                 gridletFinish(obj);
-                if(!gridletWaitingList.isEmpty()){
-                	for(int j=0;j<gridletWaitingList.size();j++){
-                		ResGridlet newGl = (ResGridlet) gridletWaitingList.get(j);
-                		if((currentCPUs-usedPEs)>=newGl.getNumPE()){
-                			newGl.setGridletStatus(Gridlet.INEXEC);
-                			for(int k=0;k<newGl.getNumPE();k++){
-                				newGl.setMachineAndPEID(0,i);
-                			}
-                        	gridletExecList.add(newGl);
-                        	usedPEs+=newGl.getNumPE();
-                        	gridletWaitingList.remove(j);
-                        	break;
-                		}
-                	}
-                }
-                continue;
+                finished++;
             } else {//not finish: estimate the finish time
             	double estimatedFinishTime = currentTime+(remainingLength/(capacity*obj.getNumPE()));
             	if(estimatedFinishTime<nextEvent) nextEvent = estimatedFinishTime;
             }
-
-            i++;
+        }
+        
+        //for each finished gridlet, starts the first waiting gridlet that fits
+        for (int n=0;n<finished;n++){
+        	for(int j=gridletWaitingList.start();j<gridletWaitingList.end();j++){
+        		ResGridlet newGl = gridletWaitingList.get(j);
+        		if(newGl!=null && (currentCPUs-usedPEs)>=newGl.getNumPE()){
+        			newGl.setGridletStatus(Gridlet.INEXEC);
+        			for(int k=0;k<newGl.getNumPE();k++){
+        				newGl.setMachineAndPEID(0,k);
+        			}
+        			gridletWaitingList.remove(j);
+        			gridletExecList.add(newGl);
+        			usedPEs+=newGl.getNumPE();
+        			
+        			double estimatedFinishTime = currentTime+(newGl.getRemainingGridletLength()/(capacity*newGl.getNumPE()));
+        			if(estimatedFinishTime<nextEvent) nextEvent = estimatedFinishTime;
+        			break;
+        		}
+        	}
         }
 		this.previousTime=currentTime;
 		return nextEvent;
@@ -141,89 +151,36 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	@Override
 	public Cloudlet cloudletCancel(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
-		//First, looks in the finished queue
-		found=false;
-		Iterator iter = gridletFinishedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			Cloudlet gl = (Cloudlet) gridletFinishedList.remove(position);
-			
-			return gl;
-		}
-		
-		//Then searches in the exec list
-		iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
+		int location = gridletIndex.get(glId);
+		if (location<0){
+			return null;
 		}
+		int slot = ResGridletTable.slotOf(location);
 		
-		if (found){
+		switch (ResGridletTable.listOf(location)){
+			case FINISHED:
+				return (Cloudlet) gridletFinishedList.remove(slot).getGridlet();
 			
-			ResGridlet rgl = (ResGridlet) gridletExecList.remove(position);
-			if (rgl.getRemainingGridletLength() == 0.0) {
-				gridletFinish(rgl);
-			} else {
-				rgl.setGridletStatus(Gridlet.CANCELED);
-			}
-			return (Cloudlet) rgl.getGridlet();
+			case EXEC:
+				ResGridlet rgl = gridletExecList.remove(slot);
+				if (rgl.getRemainingGridletLength() == 0.0) {
+					gridletFinish(rgl);
+				} else {
+					rgl.setGridletStatus(Gridlet.CANCELED);
+				}
+				return (Cloudlet) rgl.getGridlet();
 			
-		}
-		
-		//Now, looks in the paused queue
-		found=false;
-		iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
+			case PAUSED:
+				rgl = gridletPausedList.remove(slot);
 				rgl.setGridletStatus(Gridlet.CANCELED);
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			Cloudlet gl = (Cloudlet) gridletPausedList.remove(position);
+				return (Cloudlet) rgl.getGridlet();
 			
-			return gl;
-		}
-		
-		//Finally, looks in the waiting list
-		found=false;
-		iter = gridletWaitingList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
+			default://WAITING
+				rgl = gridletWaitingList.remove(slot);
 				rgl.setGridletStatus(Gridlet.CANCELED);
-				break;
-			}
-			position++;
+				return (Cloudlet) rgl.getGridlet();
 		}
 		
-		if (found){
-			Cloudlet gl = (Cloudlet) gridletPausedList.remove(position);
-			return gl;
-		}
-				
-		return null;
-		
 	}
 
 	/**
@@ -233,65 +190,35 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 * @pre $none
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public boolean cloudletPause(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
-		//first, looks for the gridlet in the exec list
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			
-			//moves to the paused list
-			ResGridlet rgl = (ResGridlet) gridletExecList.remove(position);
-			if (rgl.getRemainingGridletLength() == 0.0) {
-				gridletFinish(rgl);
-			} else {
-				rgl.setGridletStatus(Gridlet.PAUSED);
-				gridletPausedList.add(rgl);
-			}
-			return true;
-			
+		//looks for the gridlet in the exec list, then in the waiting list
+		int location = gridletIndex.get(glId);
+		if (location<0){
+			return false;
 		}
 		
-		//now, look for the gridlet in the waiting list
-		position = 0;
-		found = false;
-		iter = gridletWaitingList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
+		ResGridlet rgl;
+		switch (ResGridletTable.listOf(location)){
+			case EXEC:
+				rgl = gridletExecList.remove(ResGridletTable.slotOf(location));
 				break;
-			}
-			position++;
+			case WAITING:
+				rgl = gridletWaitingList.remove(ResGridletTable.slotOf(location));
+				break;
+			default:
+				return false;
 		}
 		
-		if (found){
-			
-			//moves to the paused list
-			ResGridlet rgl = (ResGridlet) gridletWaitingList.remove(position);
-			if (rgl.getRemainingGridletLength() == 0.0) {
-				gridletFinish(rgl);
-			} else {
-				rgl.setGridletStatus(Gridlet.PAUSED);
-				gridletPausedList.add(rgl);
-			}
-			return true;
-			
+		//moves to the paused list
+		if (rgl.getRemainingGridletLength() == 0.0) {
+			gridletFinish(rgl);
+		} else {
+			rgl.setGridletStatus(Gridlet.PAUSED);
+			gridletPausedList.add(rgl);
 		}
-		return false;
+		return true;
 		
 	}
 
@@ -301,7 +228,6 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 * @pre rgl != $null
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	private void gridletFinish(ResGridlet rgl) {
 		rgl.setGridletStatus(Gridlet.SUCCESS);
         rgl.finalizeGridlet();
@@ -316,27 +242,14 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 * @pre $none
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double cloudletResume(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
 		//look for the gridlet in the paused list
-		Iterator iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
+		int position = gridletPausedList.find(glId);
+		if (position>=0){
 			
-			ResGridlet rgl = (ResGridlet) gridletPausedList.remove(position);
+			ResGridlet rgl = gridletPausedList.remove(position);
 			
 			if((currentCPUs-usedPEs)>=rgl.getNumPE()){//it can go to the exec list
 				rgl.setGridletStatus(Gridlet.INEXEC);
@@ -391,7 +304,6 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	 * @pre gl != null
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double cloudletSubmit(Cloudlet gl, double fileTransferTime) {
 
@@ -450,22 +362,22 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	@Override
 	public int cloudletstatus(int glId) {
 		
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) return rgl.getGridletStatus();
-		}
-		iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) return rgl.getGridletStatus();
+		int location = gridletIndex.get(glId);
+		if (location<0){
+			return -1;
 		}
-		iter = gridletWaitingList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) return rgl.getGridletStatus();
+		int slot = ResGridletTable.slotOf(location);
+		
+		switch (ResGridletTable.listOf(location)){
+			case EXEC:
+				return gridletExecList.get(slot).getGridletStatus();
+			case PAUSED:
+				return gridletPausedList.get(slot).getGridletStatus();
+			case WAITING:
+				return gridletWaitingList.get(slot).getGridletStatus();
+			default:
+				return -1;
 		}
-		return -1;
 	}
 
 	/**
@@ -491,7 +403,7 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 	@Override
 	public Cloudlet getNextFinishedCloudlet() {
 		if(gridletFinishedList.size()>0){
-			Cloudlet gl = (Cloudlet) ((ResGridlet) gridletFinishedList.removeFirst()).getGridlet();
+			Cloudlet gl = (Cloudlet) gridletFinishedList.removeFirst().getGridlet();
 			return gl;
 		} else {
 			return null;
@@ -511,15 +423,16 @@ public class SpaceSharedVMScheduler extends VMScheduler {
 
 	/**
 	 * Returns one cloudlet to migrate to another vm
-	 * @return one running cloudlet
+	 * @return one running cloudlet, $null if there is none
 	 * @pre $none
 	 * @post $none
 	 */
 	@Override
 	public Cloudlet migrateCloudlet() {
-		Cloudlet cl = (Cloudlet) this.gridletExecList.removeFirst();
-		usedPEs-=cl.getNumPE();
-		return cl;
+		ResGridlet rgl = this.gridletExecList.removeFirst();
+		if (rgl==null) return null;
+		usedPEs-=rgl.getNumPE();
+		return (Cloudlet) rgl.getGridlet();
 	}
 
 }
@@ -13,9 +13,6 @@ package cloudsim;
 import gridsim.GridSim;
 import gridsim.Gridlet;
 import gridsim.ResGridlet;
-import gridsim.ResGridletList;
-
-import java.util.Iterator;
 
 
 /**
@@ -23,18 +20,41 @@ import java.util.Iterator;
  * scheduling performed by a virtual machine.
  * Gridlets execute time-shared in VM.
  * 
+ * Gridlets in execution are kept in parallel arrays, in the order they started,
+ * together with the number of PEs each one uses, and the total of PEs in use is kept
+ * up to date, so an update is a single pass over the gridlets that also compacts
+ * the arrays over the finished ones.
+ * A {@link GridletIndex} shared by the execution table and the paused and finished
+ * lists finds a gridlet by its ID in O(1).
+ * 
  * @author Rodrigo N. Calheiros
  * @since CloudSim Toolkit 1.0 Beta
  * @invariant $none
  */
 public class TimeSharedVMScheduler extends VMScheduler {
 
-	protected ResGridletList gridletExecList;
-	protected ResGridletList gridletPausedList;
-	protected ResGridletList gridletFinishedList;
+	/** Lists of the gridlets, as recorded in the gridlet index */
+	private static final int EXEC = 0;
+	private static final int PAUSED = 1;
+	private static final int FINISHED = 2;
+
+	protected ResGridlet[] execGridlets;
+	protected int[] execPEs;
+	protected int execCount;
+	protected int pesInUse;
+	protected GridletIndex gridletIndex;
+	protected ResGridletTable gridletPausedList;
+	protected ResGridletTable gridletFinishedList;
 	protected int currentCPUs;
 	protected double[] currentMIPSShare;
 	
+	/** 
+	 * Whether every gridlet finishing within the rounding margin is finished, see 
+	 * {@link #setFinishWithinMargin(boolean)}. Defaults to the system property 
+	 * <tt>cloudsim.ext.ub.aggregate</tt>, the mode that submits cloudlets together.
+	 */
+	protected boolean finishWithinMargin = Boolean.getBoolean("cloudsim.ext.ub.aggregate");
+	
 	/**
 	 * Creates a new TimeSharedVMScheduler object. This method must be invoked
 	 * before starting the actual simulation.
@@ -44,9 +64,13 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 */
 	public TimeSharedVMScheduler() {
 		super();
-		this.gridletExecList = new ResGridletList();
-		this.gridletPausedList = new ResGridletList();
-		this.gridletFinishedList = new ResGridletList();
+		this.execGridlets = new ResGridlet[16];
+		this.execPEs = new int[16];
+		this.execCount=0;
+		this.pesInUse=0;
+		this.gridletIndex = new GridletIndex();
+		this.gridletPausedList = new ResGridletTable(gridletIndex,PAUSED);
+		this.gridletFinishedList = new ResGridletTable(gridletIndex,FINISHED);
 		this.currentCPUs=0;
 	}
 	
@@ -59,76 +83,156 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 * @pre currentTime >= 0
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double updateVMProcessing(double currentTime, double[]mipsShare) {
 
 		this.currentMIPSShare=mipsShare;
 		double timeSpam = currentTime-previousTime;
+		double capacity = getCapacityPerPE();
+		
+		if(execCount==0) {
+			this.previousTime=currentTime;
+			return 0.0;
+		}
+
+		double nextEvent=Double.MAX_VALUE;
+		int kept=0;
+		for (int i=0;i<execCount;i++){
+			ResGridlet rgl = execGridlets[i];
+			int pes = execPEs[i];
+			rgl.updateGridletFinishedSoFar(capacity*timeSpam*pes);
+			double remainingLength = rgl.getRemainingGridletLength();
+
+			boolean finished = remainingLength==0.0;
+			if(!finished){
+				double estimatedFinishTime = currentTime+(remainingLength/(capacity*pes));
+				if(finishWithinMargin){
+					finished = estimatedFinishTime-currentTime<0.01;
+					if(!finished && estimatedFinishTime<nextEvent) {
+						nextEvent = estimatedFinishTime;
+					}
+				} else if(estimatedFinishTime<nextEvent) {
+					nextEvent = estimatedFinishTime;
+					finished = nextEvent-currentTime<0.01;//finish anyway, rounding issue...
+				}
+			}
+			if(finished){
+				gridletIndex.remove(rgl.getGridletID());
+				pesInUse-=pes;
+				gridletFinish(rgl);
+				continue;
+			}
+			
+			//move the gridlet down over the finished ones, keeping the order
+			if(kept<i){
+				execGridlets[kept] = rgl;
+				execPEs[kept] = pes;
+				gridletIndex.put(rgl.getGridletID(),ResGridletTable.location(EXEC,kept));
+			}
+			kept++;
+		}
+		for (int i=kept;i<execCount;i++){
+			execGridlets[i] = null;
+		}
+		execCount=kept;
+		this.previousTime=currentTime;
+		return nextEvent;
+	}
+
+	/**
+	 * Sets how gridlets that finish within the rounding margin of 0.01 are handled. By default,
+	 * as in the original scheduler, such a gridlet is only finished if it is the earliest to
+	 * finish so far in the table, and its finish time is still returned as the next event. When
+	 * many gridlets are submitted at the same time, that next event can fall within the margin
+	 * and no further event is scheduled, which stalls the VM until the next submission. With 
+	 * this set, every such gridlet is finished and none of them sets the next event.
+	 * @param finishWithinMargin $true to finish every gridlet within the rounding margin
+	 * @pre $none
+	 * @post $none
+	 */
+	public void setFinishWithinMargin(boolean finishWithinMargin) {
+		this.finishWithinMargin = finishWithinMargin;
+	}
 
+	/**
+	 * Adds a gridlet to the execution table
+	 * @param rgl the gridlet
+	 * @pre rgl != $null
+	 * @post $none
+	 */
+	private void addExec(ResGridlet rgl) {
+		if(execCount==execGridlets.length){
+			ResGridlet[] newGridlets = new ResGridlet[execCount*2];
+			int[] newPEs = new int[execCount*2];
+			System.arraycopy(execGridlets,0,newGridlets,0,execCount);
+			System.arraycopy(execPEs,0,newPEs,0,execCount);
+			execGridlets = newGridlets;
+			execPEs = newPEs;
+		}
+		int pes = rgl.getNumPE();
+		execGridlets[execCount] = rgl;
+		execPEs[execCount] = pes;
+		gridletIndex.put(rgl.getGridletID(),ResGridletTable.location(EXEC,execCount));
+		execCount++;
+		pesInUse+=pes;
+	}
+	
+	/**
+	 * Removes a gridlet from the execution table. The gridlets after it move down one
+	 * slot, so the table keeps the order in which the gridlets started.
+	 * @param slot position of the gridlet in the table
+	 * @return the removed gridlet
+	 * @pre slot >= 0 && slot < execCount
+	 * @post $none
+	 */
+	private ResGridlet removeExec(int slot) {
+		ResGridlet rgl = execGridlets[slot];
+		gridletIndex.remove(rgl.getGridletID());
+		pesInUse-=execPEs[slot];
+		execCount--;
+		for(int i=slot;i<execCount;i++){
+			execGridlets[i] = execGridlets[i+1];
+			execPEs[i] = execPEs[i+1];
+			gridletIndex.put(execGridlets[i].getGridletID(),ResGridletTable.location(EXEC,i));
+		}
+		execGridlets[execCount] = null;
+		return rgl;
+	}
+	
+	/**
+	 * Finds a gridlet in the execution table
+	 * @param glId ID of the gridlet
+	 * @return position of the gridlet in the table, -1 if it is not in execution
+	 * @pre $none
+	 * @post $none
+	 */
+	private int findExec(int glId) {
+		int location = gridletIndex.get(glId);
+		if(location<0 || ResGridletTable.listOf(location)!=EXEC) return -1;
+		return ResGridletTable.slotOf(location);
+	}
+	
+	/**
+	 * Calculates the capacity available to each PE in use, from the current MIPS share
+	 * and the PEs in use, and updates the number of CPUs
+	 * @return capacity of each PE in MIPS
+	 * @pre currentMIPSShare != $null
+	 * @post $none
+	 */
+	private double getCapacityPerPE() {
 		double capacity = 0.0;
 		int cpus=0;
-		for(int i=0;i<mipsShare.length;i++){
-			capacity+=mipsShare[i];
-			if(mipsShare[i]>0)cpus++;
+		for(int i=0;i<currentMIPSShare.length;i++){
+			capacity+=currentMIPSShare[i];
+			if(currentMIPSShare[i]>0)cpus++;
 		}
 		currentCPUs=cpus;
-
-		int pesInUse = 0;
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();		
-			pesInUse+=rgl.getNumPE();
-		}
 		
 		if(pesInUse>currentCPUs){
-			capacity/=pesInUse;
+			return capacity/pesInUse;
 		} else {
-			//System.out.println("- Capacity:"+capacity);
-			capacity/=currentCPUs;
-			//System.out.println("+ Capacity:"+capacity);
-		}
-
-		iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();		
-			rgl.updateGridletFinishedSoFar(capacity*timeSpam*rgl.getNumPE());
-		}
-
-		double nextEvent=Double.MAX_VALUE;
-		int i=0;
-		
-		if(gridletExecList.size()==0) {
-			this.previousTime=currentTime;
-			return 0.0;
+			return capacity/currentCPUs;
 		}
-		
-        while (i<gridletExecList.size()){
-            ResGridlet obj = (ResGridlet) gridletExecList.get(i);
-            double remainingLength = obj.getRemainingGridletLength();
-
-            if (remainingLength==0.0){//finished: remove from the list
-                gridletExecList.remove(obj);
-                gridletFinish(obj);
-                continue;
-            } else {//not finish: estimate the finish time
-            	double estimatedFinishTime = currentTime+(remainingLength/(capacity*obj.getNumPE()));
-            	
-            	if(estimatedFinishTime<nextEvent) {
-            		nextEvent = estimatedFinishTime;
-            	
-	            	if(nextEvent-currentTime<0.01){//finish anyway, rounding issue...
-	            		gridletExecList.remove(obj);
-	                    gridletFinish(obj);
-	                    continue;
-	            	}
-	            }
-            }
-
-            i++;
-        }
-		this.previousTime=currentTime;
-		return nextEvent;
 	}
 
 	/**
@@ -141,41 +245,17 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	@Override
 	public Cloudlet cloudletCancel(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
 		//First, looks in the finished queue
-		found=false;
-		Iterator iter = gridletFinishedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			Cloudlet gl = (Cloudlet) gridletFinishedList.remove(position);
-			
-			return gl;
+		int position = gridletFinishedList.find(glId);
+		if (position>=0){
+			return (Cloudlet) gridletFinishedList.remove(position).getGridlet();
 		}
 		
 		//Then searches in the exec list
-		iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
+		int slot = findExec(glId);
+		if (slot>=0){
 			
-			ResGridlet rgl = (ResGridlet) gridletExecList.remove(position);
+			ResGridlet rgl = removeExec(slot);
 			if (rgl.getRemainingGridletLength() == 0.0) {
 				gridletFinish(rgl);
 			} else {
@@ -186,22 +266,11 @@ public class TimeSharedVMScheduler extends VMScheduler {
 		}
 		
 		//Now, looks in the paused queue
-		found=false;
-		iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				rgl.setGridletStatus(Gridlet.CANCELED);
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			Cloudlet gl = (Cloudlet) gridletPausedList.remove(position);
-			
-			return gl;
+		position = gridletPausedList.find(glId);
+		if (position>=0){
+			ResGridlet rgl = gridletPausedList.remove(position);
+			rgl.setGridletStatus(Gridlet.CANCELED);
+			return (Cloudlet) rgl.getGridlet();
 		}
 						
 		return null;
@@ -215,27 +284,14 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 * @pre $none
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public boolean cloudletPause(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
+		int slot = findExec(glId);
+		if (slot>=0){
 			
 			//remove gridlet from the exec list and put it in the paused list
-			ResGridlet rgl = (ResGridlet) gridletExecList.remove(position);
+			ResGridlet rgl = removeExec(slot);
 			if (rgl.getRemainingGridletLength() == 0.0) {
 				gridletFinish(rgl);
 			} else {
@@ -255,7 +311,6 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 * @pre rgl != $null
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	private void gridletFinish(ResGridlet rgl) {
 		rgl.setGridletStatus(Gridlet.SUCCESS);
         rgl.finalizeGridlet();
@@ -269,53 +324,18 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 * @pre $none
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double cloudletResume(int glId) {
 		
-		boolean found=false;
-		int position=0;
-		
 		//look for the gridlet in the paused list
-		Iterator iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) {
-				found=true;
-				break;
-			}
-			position++;
-		}
-		
-		if (found){
-			ResGridlet rgl = (ResGridlet) gridletPausedList.remove(position);
+		int position = gridletPausedList.find(glId);
+		if (position>=0){
+			ResGridlet rgl = gridletPausedList.remove(position);
 			rgl.setGridletStatus(Gridlet.INEXEC);
-			gridletExecList.add(rgl);
+			addExec(rgl);
 			
 			//calculate the expected time for gridlet completion
-			//first: how many PEs do we have?
-			double capacity = 0.0;
-			int cpus=0;
-			for(int i=0;i<currentMIPSShare.length;i++){
-				capacity+=currentMIPSShare[i];
-				if(currentMIPSShare[i]>0)cpus++;
-			}
-			currentCPUs=cpus;
-			
-			//how many PEs each gridlet uses?
-			int pesInUse = 0;
-			iter = gridletExecList.iterator();
-			while(iter.hasNext()){
-				ResGridlet glt = (ResGridlet) iter.next();		
-				pesInUse+=glt.getNumPE();
-			}
-			
-			//available capacity for each gridlet
-			if(pesInUse>currentCPUs){
-				capacity/=pesInUse;
-			} else {
-				capacity/=currentCPUs;
-			}
+			double capacity = getCapacityPerPE();
 
 			double remainingLength = rgl.getRemainingGridletLength();
 			double estimatedFinishTime = GridSim.clock()+(remainingLength/(capacity*rgl.getNumPE()));
@@ -334,7 +354,6 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 * @pre gl != null
 	 * @post $none
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public double cloudletSubmit(Cloudlet gl, double fileTransferTime) {
 
@@ -347,7 +366,7 @@ public class TimeSharedVMScheduler extends VMScheduler {
 		double size = rgl.getGridletLength();
 		size*=rgl.getNumPE();
 		rgl.getGridlet().setGridletLength(size);
-		gridletExecList.add(rgl);
+		addExec(rgl);
 		
 		//calculate the expected time for gridlet completion
 		//first: how many PEs do we have?
@@ -366,26 +385,8 @@ public class TimeSharedVMScheduler extends VMScheduler {
 		length+=extraSize;
 		gl.setGridletLength(length);
 		
-		currentCPUs=cpus;
-		
-		//how many PEs each gridlet uses?
-		int pesInUse = 0;
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet glt = (ResGridlet) iter.next();		
-			pesInUse+=glt.getNumPE();
-		}
-		
 		//available capacity for each gridlet
-		if(pesInUse>currentCPUs){
-			capacity/=pesInUse;
-		} else {
-			//System.out.println("Capacity:"+capacity);
-			capacity/=currentCPUs;
-			//System.out.println("Capacity:"+capacity);
-		}
-
-		return capacity;
+		return getCapacityPerPE();
 	}
 
 	/**
@@ -398,16 +399,12 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	@Override
 	public int cloudletstatus(int glId) {
 		
-		Iterator iter = gridletExecList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) return rgl.getGridletStatus();
-		}
-		iter = gridletPausedList.iterator();
-		while(iter.hasNext()){
-			ResGridlet rgl = (ResGridlet) iter.next();
-			if (rgl.getGridletID()==glId) return rgl.getGridletStatus();
-		}
+		int slot = findExec(glId);
+		if (slot>=0) return execGridlets[slot].getGridletStatus();
+		
+		int position = gridletPausedList.find(glId);
+		if (position>=0) return gridletPausedList.get(position).getGridletStatus();
+		
 		return -1;
 	}
 
@@ -434,7 +431,7 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	@Override
 	public Cloudlet getNextFinishedCloudlet() {
 		if(gridletFinishedList.size()>0){
-			Cloudlet gl = (Cloudlet) ((ResGridlet) gridletFinishedList.removeFirst()).getGridlet();
+			Cloudlet gl = (Cloudlet) gridletFinishedList.removeFirst().getGridlet();
 			return gl;
 		} else {
 			return null;
@@ -449,18 +446,19 @@ public class TimeSharedVMScheduler extends VMScheduler {
 	 */
 	@Override
 	public int runningCloudlets() {
-		return this.gridletExecList.size();
+		return this.execCount;
 	}
 
 	/**
 	 * Returns one cloudlet to migrate to another vm
-	 * @return one running cloudlet
+	 * @return the running cloudlet that started first
 	 * @pre $none
 	 * @post $none
 	 */
 	@Override
 	public Cloudlet migrateCloudlet() {
-		Cloudlet cl = (Cloudlet) this.gridletExecList.removeFirst();		
+		if (execCount==0) return null;
+		Cloudlet cl = (Cloudlet) removeExec(0).getGridlet();
 		return cl;
 	}
 
@@ -0,0 +1,173 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package cloudsim;
+
+
+/**
+ * VMEventIndex keeps the VMs of a datacenter that have cloudlets in execution,
+ * ordered by the expected completion time of their next cloudlet. It is a binary
+ * min-heap, and each VM remembers its own position so that its time can be
+ * changed or removed in O(log n).
+ *
+ * @invariant $none
+ */
+class VMEventIndex {
+
+	private VirtualMachine[] vms;
+	private double[] times;
+	private int size;
+
+	/**
+	 * Creates an empty index
+	 * @pre $none
+	 * @post $none
+	 */
+	VMEventIndex() {
+		this.vms = new VirtualMachine[16];
+		this.times = new double[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Sets the time of the next event of a VM, adding the VM if it is not in the index
+	 * @param vm the VM
+	 * @param time expected completion time of its next cloudlet
+	 * @pre vm != $null
+	 * @post $none
+	 */
+	void update(VirtualMachine vm, double time) {
+		int pos = vm.eventIndexPosition;
+		if (pos < 0) {
+			if (size == vms.length) {
+				VirtualMachine[] newVms = new VirtualMachine[size * 2];
+				double[] newTimes = new double[size * 2];
+				System.arraycopy(vms, 0, newVms, 0, size);
+				System.arraycopy(times, 0, newTimes, 0, size);
+				vms = newVms;
+				times = newTimes;
+			}
+			pos = size++;
+			vms[pos] = vm;
+			times[pos] = time;
+			vm.eventIndexPosition = pos;
+			siftUp(pos);
+		} else {
+			double old = times[pos];
+			times[pos] = time;
+			if (time < old) {
+				siftUp(pos);
+			} else {
+				siftDown(pos);
+			}
+		}
+	}
+
+	/**
+	 * Removes a VM from the index, if it is there
+	 * @param vm the VM
+	 * @pre vm != $null
+	 * @post $none
+	 */
+	void remove(VirtualMachine vm) {
+		int pos = vm.eventIndexPosition;
+		if (pos < 0) {
+			return;
+		}
+		vm.eventIndexPosition = -1;
+		size--;
+		if (pos < size) {
+			double old = times[pos];
+			move(size, pos);
+			if (times[pos] < old) {
+				siftUp(pos);
+			} else {
+				siftDown(pos);
+			}
+		}
+		vms[size] = null;
+	}
+
+	/**
+	 * Removes and returns the VM with the earliest event
+	 * @return the VM, $null if the index is empty
+	 * @pre $none
+	 * @post $none
+	 */
+	VirtualMachine poll() {
+		if (size == 0) {
+			return null;
+		}
+		VirtualMachine vm = vms[0];
+		remove(vm);
+		return vm;
+	}
+
+	/**
+	 * Returns the earliest event time in the index
+	 * @return the time, Double.MAX_VALUE if the index is empty
+	 * @pre $none
+	 * @post $none
+	 */
+	double peekTime() {
+		return (size == 0) ? Double.MAX_VALUE : times[0];
+	}
+
+	/**
+	 * Returns the number of VMs in the index
+	 * @return number of VMs with cloudlets in execution
+	 * @pre $none
+	 * @post $result >= 0
+	 */
+	int size() {
+		return size;
+	}
+
+	private void siftUp(int pos) {
+		VirtualMachine vm = vms[pos];
+		double time = times[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (times[parent] <= time) {
+				break;
+			}
+			move(parent, pos);
+			pos = parent;
+		}
+		place(vm, time, pos);
+	}
+
+	private void siftDown(int pos) {
+		VirtualMachine vm = vms[pos];
+		double time = times[pos];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			if (child + 1 < size && times[child + 1] < times[child]) {
+				child++;
+			}
+			if (time <= times[child]) {
+				break;
+			}
+			move(child, pos);
+			pos = child;
+		}
+		place(vm, time, pos);
+	}
+
+	private void move(int from, int to) {
+		place(vms[from], times[from], to);
+	}
+
+	private void place(VirtualMachine vm, double time, int pos) {
+		vms[pos] = vm;
+		times[pos] = time;
+		vm.eventIndexPosition = pos;
+	}
+}
@@ -26,6 +26,9 @@ public class VirtualMachine {
 	protected VMCharacteristics characteristics;
 	protected Host host;
 	
+	/** Position of this VM in the {@link VMEventIndex} of its datacenter, -1 if it is not there */
+	int eventIndexPosition = -1;
+	
 	/**
 	 * Creates a new VM object
 	 * @param characteristics description of the VM
@@ -168,6 +171,16 @@ public class VirtualMachine {
 		this.host=host;
 	}
 	
+	/**
+	 * Returns the host that runs this VM
+	 * @return host running the VM, $null if it was not set
+	 * @pre $none
+	 * @post $none
+	 */
+	public Host getHost(){
+		return this.host;
+	}
+	
 	/**
 	 * Returns an object of the type VMCharacteristics, with
 	 * the description of this VM
@@ -0,0 +1,626 @@
+package cloudsim.ext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cloudsim.ext.datacenter.VmLoadBalancerFactory;
+import cloudsim.ext.datacenter.VmLoadBalancerRegistry;
+import cloudsim.ext.event.CloudSimEvent;
+import cloudsim.ext.event.CloudSimEventListener;
+import cloudsim.ext.gui.utils.SimMeasure;
+
+/**
+ * Runs a scenario for every combination of load balancing policy, service broker policy, seed and
+ * grouping factors, and writes the response time and cost of each run to one CSV or JSON file.
+ *
+ * GridSim and simjava keep the simulation in static state and write their trace and report files
+ * to the working directory, so each run is a separate JVM started in its own directory under
+ * <code>&lt;output&gt;_runs</code>. Several of them execute concurrently, one per thread. The latency
+ * and bandwidth matrices are parsed once and handed to every run.
+ *
+ * Usage:
+ * <pre>
+ * BatchRunner &lt;scenario&gt; [--policies=p1,p2] [--brokers=b1,b2] [--seeds=1,2,3]
+ *             [--user-grouping=10,20] [--dc-grouping=10,20] [--threads=N]
+ *             [--out=results.csv|results.json] [--verbose] [key=value ...]
+ * </pre>
+ * The scenario is as accepted by {@link HeadlessRunner}. Policies default to all registered load
+ * balancers; brokers and grouping factors default to those of the scenario. A seed sets both the
+ * random streams of the workload and the seed of the load balancers. Trailing key=value arguments
+ * are load balancer properties passed to every run.
+ */
+public class BatchRunner {
+
+	private static final String DEFAULT_OUTPUT = "batch_results.csv";
+	private static final String STATUS_OK = "ok";
+	
+	/** Argument that makes {@link #main(String[])} execute one run in the given directory */
+	private static final String RUN_ARG = "--run=";
+	private static final String RUN_FILE = "run.properties";
+	private static final String METRICS_FILE = "metrics.ser";
+	private static final String ERROR_FILE = "error.txt";
+	private static final String LOG_FILE = "simulation.log";
+	private static final String MATRICES_FILE = "matrices.ser";
+	private static final String LB_PREFIX = "lb.";
+
+	/** One combination of the parameter matrix */
+	static class RunSpec {
+		final String policy;
+		final String broker;
+		final String seed;
+		final Integer userGrouping;
+		final Integer dcGrouping;
+		String status;
+		long wallTime;
+		Map<String, Double> metrics = Collections.emptyMap();
+
+		RunSpec(String policy, String broker, String seed, Integer userGrouping, Integer dcGrouping){
+			this.policy = policy;
+			this.broker = broker;
+			this.seed = seed;
+			this.userGrouping = userGrouping;
+			this.dcGrouping = dcGrouping;
+		}
+
+		@Override
+		public String toString(){
+			return policy + (broker != null ? ", " + broker : "") + (seed != null ? ", seed " + seed : "")
+				   + (userGrouping != null ? ", user grouping " + userGrouping : "")
+				   + (dcGrouping != null ? ", dc grouping " + dcGrouping : "");
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 2 && args[0].startsWith(RUN_ARG)){
+			System.exit(runInDirectory(new File(valueOf(args[0])), args[1]));
+		}
+		
+		try {
+			new BatchRunner().run(args);
+		} catch (Exception e) {
+			System.out.println("CRITICAL ERROR:");
+			e.printStackTrace(System.out);
+		}
+	}
+
+	public void run(String[] args) throws Exception {
+		if (args.length == 0){
+			printUsage();
+			return;
+		}
+
+		String scenario = args[0];
+		List<String> policies = VmLoadBalancerRegistry.getPolicyNames();
+		List<String> brokers = Collections.singletonList(null);
+		List<String> seeds = Collections.singletonList(null);
+		List<Integer> userGroupings = Collections.singletonList(null);
+		List<Integer> dcGroupings = Collections.singletonList(null);
+		int threads = Runtime.getRuntime().availableProcessors();
+		String output = DEFAULT_OUTPUT;
+		boolean verbose = false;
+		Map<String, String> lbProperties = new HashMap<String, String>();
+
+		for (int i = 1; i < args.length; i++){
+			String arg = args[i];
+			if (arg.startsWith("--policies=")){
+				policies = splitList(arg);
+			} else if (arg.startsWith("--brokers=")){
+				brokers = splitList(arg);
+			} else if (arg.startsWith("--seeds=")){
+				seeds = splitList(arg);
+				for (String seed : seeds){
+					Long.parseLong(seed);
+				}
+			} else if (arg.startsWith("--user-grouping=")){
+				userGroupings = toIntegers(splitList(arg));
+			} else if (arg.startsWith("--dc-grouping=")){
+				dcGroupings = toIntegers(splitList(arg));
+			} else if (arg.startsWith("--threads=")){
+				threads = Integer.parseInt(valueOf(arg));
+			} else if (arg.startsWith("--out=")){
+				output = valueOf(arg);
+			} else if (arg.equals("--verbose")){
+				verbose = true;
+			} else if (arg.indexOf('=') > 0){
+				lbProperties.put(arg.substring(0, arg.indexOf('=')), valueOf(arg));
+			} else {
+				throw new IllegalArgumentException("Unrecognised argument: " + arg);
+			}
+		}
+		
+		if (threads < 1){
+			System.out.println("--threads must be at least 1");
+			printUsage();
+			return;
+		}
+
+		for (String policy : policies){
+			if (VmLoadBalancerRegistry.getFactory(policy) == null){
+				throw new IllegalArgumentException("Unknown load balancing policy: " + policy);
+			}
+		}
+
+		List<RunSpec> runs = new ArrayList<RunSpec>();
+		for (String policy : policies){
+			for (String broker : brokers){
+				for (String seed : seeds){
+					for (Integer userGrouping : userGroupings){
+						for (Integer dcGrouping : dcGroupings){
+							runs.add(new RunSpec(policy, broker, seed, userGrouping, dcGrouping));
+						}
+					}
+				}
+			}
+		}
+
+		File runsDir = getRunsDirectory(output);
+		System.out.println("Running " + runs.size() + " simulations of scenario " + scenario + " on " + threads 
+						   + " threads in " + runsDir);
+		long start = System.currentTimeMillis();
+		runAll(resolveScenario(scenario), runs, lbProperties, runsDir, threads, verbose);
+		long elapsed = System.currentTimeMillis() - start;
+
+		long totalRunTime = 0;
+		int failed = 0;
+		for (RunSpec run : runs){
+			totalRunTime += run.wallTime;
+			if (!STATUS_OK.equals(run.status)){
+				failed++;
+			}
+		}
+
+		if (output.toLowerCase().endsWith(".json")){
+			writeJson(runs, new File(output));
+		} else {
+			writeCsv(runs, new File(output));
+		}
+
+		System.out.println("Completed " + runs.size() + " runs (" + failed + " failed) in " + elapsed + " ms, "
+						   + totalRunTime + " ms of simulation time in total");
+		System.out.println("Results written to " + output);
+	}
+
+	private static void printUsage(){
+		System.out.println("Usage: BatchRunner <scenario> [--policies=p1,p2] [--brokers=b1,b2] [--seeds=1,2]"
+						   + " [--user-grouping=n1,n2] [--dc-grouping=n1,n2] [--threads=N]"
+						   + " [--out=file.csv|file.json] [--verbose] [key=value ...]");
+	}
+
+	private void runAll(final String scenario, List<RunSpec> runs, final Map<String, String> lbProperties,
+						File runsDir, int threads, final boolean verbose) throws Exception {
+		if (!runsDir.isDirectory() && !runsDir.mkdirs()){
+			throw new IOException("Unable to create " + runsDir);
+		}
+		
+		InternetCharacteristics configured = InternetCharacteristics.getInstance();
+		final File matrices = new File(runsDir, MATRICES_FILE);
+		writeObject(matrices, new double[][][]{ configured.getLatencyMatrix(), configured.getBwMatrix() });
+
+		final List<String> command = getJavaCommand();
+		final AtomicInteger completed = new AtomicInteger();
+		final int total = runs.size();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < runs.size(); i++){
+				final RunSpec run = runs.get(i);
+				final File runDir = new File(runsDir, "run" + (i + 1));
+				futures.add(executor.submit(new Runnable(){
+					public void run(){
+						long runStart = System.currentTimeMillis();
+						try {
+							run.metrics = runProcess(command, runDir, scenario, run, lbProperties, matrices, verbose);
+							run.status = STATUS_OK;
+						} catch (Throwable t){
+							run.status = "error: " + t.getMessage();
+						}
+						run.wallTime = System.currentTimeMillis() - runStart;
+						System.out.println("[" + completed.incrementAndGet() + "/" + total + "] " + run + ": "
+										   + run.status + " in " + run.wallTime + " ms");
+					}
+				}));
+			}
+			for (Future<?> f : futures){
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs one simulation in a separate JVM whose working directory is <code>runDir</code>, so
+	 * the files written by GridSim and simjava stay with the run.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Double> runProcess(List<String> command, File runDir, String scenario, RunSpec run,
+										   Map<String, String> lbProperties, File matrices, 
+										   boolean verbose) throws Exception {
+		if (!runDir.isDirectory() && !runDir.mkdirs()){
+			throw new IOException("Unable to create " + runDir);
+		}
+		File metricsFile = new File(runDir, METRICS_FILE);
+		File errorFile = new File(runDir, ERROR_FILE);
+		metricsFile.delete();
+		errorFile.delete();
+		
+		Properties description = new Properties();
+		description.setProperty("scenario", scenario);
+		description.setProperty("policy", run.policy);
+		setIfPresent(description, "broker", run.broker);
+		setIfPresent(description, "seed", run.seed);
+		setIfPresent(description, "user.grouping", run.userGrouping);
+		setIfPresent(description, "dc.grouping", run.dcGrouping);
+		for (Map.Entry<String, String> property : lbProperties.entrySet()){
+			description.setProperty(LB_PREFIX + property.getKey(), property.getValue());
+		}
+		OutputStream out = new FileOutputStream(new File(runDir, RUN_FILE));
+		try {
+			description.store(out, run.toString());
+		} finally {
+			out.close();
+		}
+
+		List<String> runCommand = new ArrayList<String>(command);
+		runCommand.add(RUN_ARG + runDir.getAbsolutePath());
+		runCommand.add(matrices.getAbsolutePath());
+		ProcessBuilder builder = new ProcessBuilder(runCommand).directory(runDir).redirectErrorStream(true);
+		if (verbose){
+			builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		} else {
+			builder.redirectOutput(new File(runDir, LOG_FILE));
+		}
+		
+		int exitCode = builder.start().waitFor();
+		if (errorFile.exists()){
+			throw new Exception(readFirstLine(errorFile));
+		}
+		if (exitCode != 0 || !metricsFile.exists()){
+			throw new Exception("exit code " + exitCode + ", see " + new File(runDir, LOG_FILE));
+		}
+		return (Map<String, Double>) readObject(metricsFile);
+	}
+
+	/**
+	 * Executes the run described in <code>runDir</code>, in a JVM started by {@link #runProcess}.
+	 * 
+	 * @return the exit code of the process
+	 */
+	private static int runInDirectory(File runDir, String matricesFile){
+		try {
+			Properties description = new Properties();
+			InputStream in = new FileInputStream(new File(runDir, RUN_FILE));
+			try {
+				description.load(in);
+			} finally {
+				in.close();
+			}
+			
+			Map<String, String> lbProperties = new HashMap<String, String>();
+			for (String name : description.stringPropertyNames()){
+				if (name.startsWith(LB_PREFIX)){
+					lbProperties.put(name.substring(LB_PREFIX.length()), description.getProperty(name));
+				}
+			}
+			double[][][] matrices = (double[][][]) readObject(new File(matricesFile));
+			
+			Map<String, Double> metrics = runScenario(description.getProperty("scenario"), 
+													  description.getProperty("policy"),
+													  description.getProperty("broker"),
+													  description.getProperty("seed"),
+													  toInteger(description.getProperty("user.grouping")),
+													  toInteger(description.getProperty("dc.grouping")),
+													  lbProperties, matrices[0], matrices[1]);
+			writeObject(new File(runDir, METRICS_FILE), new LinkedHashMap<String, Double>(metrics));
+			return 0;
+		} catch (Throwable t){
+			t.printStackTrace();
+			try {
+				PrintWriter out = new PrintWriter(new FileWriter(new File(runDir, ERROR_FILE)));
+				out.println(t);
+				out.close();
+			} catch (IOException e){
+				e.printStackTrace();
+			}
+			return 1;
+		}
+	}
+
+	/**
+	 * Runs a single simulation in this JVM and returns its metrics. GridSim and simjava keep their
+	 * state in static fields, so this is called once per process.
+	 *
+	 * @param scenario
+	 * @param policy load balancing policy
+	 * @param broker service broker policy, or null to keep that of the scenario
+	 * @param seed seed of the workload and the load balancers, or null to keep the defaults
+	 * @param userGrouping user grouping factor, or null to keep that of the scenario
+	 * @param dcGrouping data center request grouping factor, or null to keep that of the scenario
+	 * @param lbProperties load balancer properties
+	 * @param latencyMatrix already parsed latency matrix, or null to load it from the configuration file
+	 * @param bwMatrix already parsed bandwidth matrix, or null to load it from the configuration file
+	 * @return metric name to value
+	 */
+	public static Map<String, Double> runScenario(String scenario, String policy, String broker, String seed,
+												  Integer userGrouping, Integer dcGrouping,
+												  Map<String, String> lbProperties,
+												  double[][] latencyMatrix, double[][] bwMatrix) throws Exception {
+		if (seed != null){
+			lbProperties = new HashMap<String, String>(lbProperties);
+			lbProperties.put(VmLoadBalancerFactory.PROP_SEED, seed);
+		}
+		
+		InternetCharacteristics.setConfiguredMatrices(latencyMatrix, bwMatrix);
+		Simulation sim = new Simulation(new CloudSimEventListener(){
+			public void cloudSimEventFired(CloudSimEvent e) {}
+		});
+		HeadlessRunner.configureScenario(sim, scenario);
+		sim.setLoadBalancePolicy(policy);
+		sim.setLoadBalancerProperties(lbProperties);
+		if (seed != null){
+			sim.setSeed(Long.valueOf(seed.trim()));
+		}
+		if (broker != null){
+			sim.setServiceBrokerPolicy(broker);
+		}
+		if (userGrouping != null){
+			sim.setUserGroupingFactor(userGrouping);
+		}
+		if (dcGrouping != null){
+			sim.setDcRequestGroupingFactor(dcGrouping);
+		}
+
+		sim.runSimulation();
+
+		return getMetrics(sim.getResults());
+	}
+	
+
+	/**
+	 * Flattens the results of a simulation into the overall response time and cost, followed by the
+	 * response time of each user base and the processing time and cost of each data center.
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Double> getMetrics(Map<String, Object> results){
+		Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+		Map<String, Double> details = new LinkedHashMap<String, Double>();
+
+		double responseSum = 0;
+		double responseMax = 0;
+		long responseCount = 0;
+		Map<String, SimMeasure> ubStats = (Map<String, SimMeasure>) results.get(Constants.UB_STATS);
+		for (SimMeasure m : ubStats.values()){
+			if (m.getName().equals(Constants.UB_RESPONSE_TIME)){
+				responseSum += m.getAvg() * m.getCount();
+				responseCount += m.getCount();
+				responseMax = Math.max(responseMax, m.getMax());
+				details.put(m.getEntityName() + "_response_avg", m.getAvg());
+				details.put(m.getEntityName() + "_response_max", m.getMax());
+			}
+		}
+		metrics.put("response_avg", (responseCount > 0) ? responseSum / responseCount : 0.0);
+		metrics.put("response_max", responseMax);
+
+		Map<String, SimMeasure> dcStats = (Map<String, SimMeasure>) results.get(Constants.DC_PROCESSING_TIME_STATS);
+		for (SimMeasure m : dcStats.values()){
+			if (m.getName().equals(Constants.DC_SERVICE_TIME)){
+				details.put(m.getEntityName() + "_processing_avg", m.getAvg());
+			}
+		}
+
+		double totalCost = 0;
+		Map<String, Map<String, Double>> costs = (Map<String, Map<String, Double>>) results.get(Constants.COSTS);
+		List<String> dcNames = new ArrayList<String>(costs.keySet());
+		Collections.sort(dcNames);
+		for (String dcName : dcNames){
+			double cost = costs.get(dcName).get(Constants.TOTAL_COST);
+			totalCost += cost;
+			details.put(dcName + "_cost", cost);
+		}
+		metrics.put("total_cost", totalCost);
+
+		metrics.putAll(details);
+		return metrics;
+	}
+
+	private static void writeCsv(List<RunSpec> runs, File file) throws IOException {
+		List<String> columns = getMetricNames(runs);
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.print("policy,broker,seed,user_grouping,dc_grouping,status,wall_ms");
+			for (String column : columns){
+				out.print("," + column);
+			}
+			out.println();
+
+			for (RunSpec run : runs){
+				out.print(csv(run.policy) + "," + csv(run.broker) + "," + csv(run.seed) + ","
+						  + csv(run.userGrouping) + "," + csv(run.dcGrouping) + "," + csv(run.status) + "," + run.wallTime);
+				for (String column : columns){
+					Double value = run.metrics.get(column);
+					out.print("," + (value != null ? value.toString() : ""));
+				}
+				out.println();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeJson(List<RunSpec> runs, File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("[");
+			for (int i = 0; i < runs.size(); i++){
+				RunSpec run = runs.get(i);
+				out.print("  {\"policy\": " + json(run.policy) + ", \"broker\": " + json(run.broker)
+						  + ", \"seed\": " + json(run.seed) + ", \"user_grouping\": " + run.userGrouping
+						  + ", \"dc_grouping\": " + run.dcGrouping + ", \"status\": " + json(run.status)
+						  + ", \"wall_ms\": " + run.wallTime);
+				for (Map.Entry<String, Double> metric : run.metrics.entrySet()){
+					out.print(", " + json(metric.getKey()) + ": " + json(metric.getValue()));
+				}
+				out.println((i < runs.size() - 1) ? "}," : "}");
+			}
+			out.println("]");
+		} finally {
+			out.close();
+		}
+	}
+
+	/** Metric names of all runs, in the order they first appear */
+	private static List<String> getMetricNames(List<RunSpec> runs){
+		Set<String> names = new LinkedHashSet<String>();
+		for (RunSpec run : runs){
+			names.addAll(run.metrics.keySet());
+		}
+		return new ArrayList<String>(names);
+	}
+
+	private static String csv(Object value){
+		if (value == null){
+			return "";
+		}
+		String s = value.toString();
+		if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0){
+			return "\"" + s.replace("\"", "\"\"") + "\"";
+		}
+		return s;
+	}
+
+	/** JSON has no NaN or infinity, so those are written as null */
+	private static String json(Double value){
+		if (value == null || value.isNaN() || value.isInfinite()){
+			return "null";
+		}
+		return value.toString();
+	}
+
+	private static String json(String value){
+		if (value == null){
+			return "null";
+		}
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/** Directory holding one sub directory per run, named after the output file */
+	private static File getRunsDirectory(String output){
+		File file = new File(output).getAbsoluteFile();
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return new File(file.getParentFile(), ((dot > 0) ? name.substring(0, dot) : name) + "_runs");
+	}
+
+	/** Scenario files are given relative to this directory, not to that of each run */
+	private static String resolveScenario(String scenario){
+		File file = new File(scenario);
+		return file.exists() ? file.getAbsolutePath() : scenario;
+	}
+
+	/** The command starting a JVM like this one: same Java, class path and system properties */
+	private static List<String> getJavaCommand(){
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()){
+			if (arg.startsWith("-D") || arg.startsWith("-X")){
+				command.add(arg);
+			}
+		}
+
+		StringBuilder classpath = new StringBuilder();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)){
+			if (classpath.length() > 0){
+				classpath.append(File.pathSeparator);
+			}
+			classpath.append(new File(entry).getAbsolutePath());
+		}
+		command.add("-cp");
+		command.add(classpath.toString());
+		command.add(BatchRunner.class.getName());
+		return command;
+	}
+
+	private static void setIfPresent(Properties properties, String name, Object value){
+		if (value != null){
+			properties.setProperty(name, value.toString());
+		}
+	}
+
+	private static void writeObject(File file, Object value) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+		try {
+			out.writeObject(value);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Object readObject(File file) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String readFirstLine(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			return in.readLine();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String valueOf(String arg){
+		return arg.substring(arg.indexOf('=') + 1);
+	}
+
+	private static List<String> splitList(String arg){
+		List<String> values = new ArrayList<String>();
+		for (String s : Arrays.asList(valueOf(arg).split(","))){
+			if (s.trim().length() > 0){
+				values.add(s.trim());
+			}
+		}
+		return values;
+	}
+
+	private static List<Integer> toIntegers(List<String> values){
+		List<Integer> integers = new ArrayList<Integer>();
+		for (String s : values){
+			integers.add(Integer.valueOf(s));
+		}
+		return integers;
+	}
+	
+	private static Integer toInteger(String value){
+		return (value != null) ? Integer.valueOf(value) : null;
+	}
+}
@@ -11,12 +11,15 @@ public interface Constants {
 
 	final int RESPONSE_INTERNET_CLOUDLET_TAG = 2002;
 
+	final int LINK_TIMER_TAG = 2003;
+
 	final String MEASURE_TYPE_OVERALL_USER_BASE_RESPONSE = "Overall userbase response time";
 	final String MEASURE_TYPE_USER_BASE_RESPONSE = "Userbase Response Time";
 	final String MEASURE_TYPE_DC_PROCESSING_TIME = "DC Processing Time";
 	final String UB_RESPONSE_TIME = "UB Response time";
 	final String HOURLY_RESPONSE_TIME = "Hourly Response Time";
 	final String DC_SERVICE_TIME = "Service time";
+	final String DC_QUEUE_WAITING_TIME = "Queue waiting time";
 
 	final String INTERNET_ENTITIES = "internet_entities";
 
@@ -28,6 +31,8 @@ public interface Constants {
 	final String PARAM_TIME = "time";
 	final String PARAM_PROCESSING_TIME = "processing_time";
 	final String PARAM_COMM_PATH = "commPath";
+	/** Set on a response whose request was dropped by the data center instead of processed */
+	final String PARAM_FAILED = "failed";
 
 	final double MILLI_SECONDS_TO_MINS = 1000 * 60;
 	final double MILLI_SECONDS_TO_HOURS = 1000 * 60 * 60;
@@ -73,6 +78,8 @@ public interface Constants {
 	final String DC_ARRIVAL_STATS = "DC stats";
 	final String DC_PROCESSING_TIME_STATS = "DC processing time stats";
 	final String DC_OVER_LOADING_STATS = "DC overloading stats";
+	final String DC_QUEUE_STATS = "DC queue stats";
+	final String LINK_UTILISATION_STATS = "Link utilisation stats";
 	final String COSTS = "Costs";
 	final String VM_COST = "VM Cost";
 	final String DATA_COST = "Data Cost";
@@ -86,5 +93,6 @@ public interface Constants {
 	final String LOAD_BALANCE_HONEY_COLONY = "Honey Bee Foraging loadbalancer";
 	final String LOAD_BALANCE_MIN_MIN = "Min-Min Scheduling";
 	final String LOAD_BALANCE_MAX_MIN = "Max-Min Scheduling";
+	final String LOAD_BALANCE_POWER_OF_TWO = "Power of Two Choices";
 	
 }
@@ -0,0 +1,268 @@
+package cloudsim.ext;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+import cloudsim.ext.stat.HourlyStat;
+import eduni.simjava.Sim_stat;
+
+/**
+ * Fluid model of the links between regions, used by {@link Internet} in place of the instantaneous
+ * delay estimate of {@link InternetCharacteristics#getDataTransferDelay(int, int, double)}.
+ * 
+ * Every message in transit on a link gets an equal share of its bandwidth, as in processor sharing.
+ * Each link keeps a virtual time, the number of bytes each of its transfers has been sent so far, 
+ * which advances at <code>bandwidth / transfers</code>. A transfer of S bytes starting at virtual time V 
+ * finishes when the virtual time reaches V + S, so the finish tags are fixed on arrival and only the 
+ * time of the earliest one has to be recomputed when transfers start or finish.
+ * 
+ * Links are undirected and indexed by {@link InternetCharacteristics#pathIndex(int, int)}. 
+ * The utilisation of each link (the fraction of time it is carrying data) is recorded per hour of 
+ * the day in a {@link HourlyStat}.
+ *
+ * @param <T> the message carried by a transfer
+ */
+public class FluidLinkModel<T> {
+	
+	private static final String UTILISATION_MEASURE = "Link utilisation";
+	/** Transfers this close to finishing, relative to the virtual time, are treated as finished */
+	private static final double FINISH_TOLERANCE = 1e-9;
+	
+	private final Link<T>[] links;
+	
+	/**
+	 * @param characteristics source of the link bandwidths
+	 * @param stat statistics the utilisation measures are added to
+	 */
+	public FluidLinkModel(InternetCharacteristics characteristics, Sim_stat stat){
+		int regions = Constants.WORLD_REGIONS;
+		links = newLinkArray(regions * regions);
+		for (int r1 = 0; r1 < regions; r1++){
+			for (int r2 = r1; r2 < regions; r2++){
+				int index = InternetCharacteristics.pathIndex(r1, r2);
+				double bytesPerMs = characteristics.getBandwidth(r1, r2) / 1000;
+				HourlyStat utilisation = new HourlyStat(stat, UTILISATION_MEASURE + " " + r1 + "<->" + r2, Sim_stat.STATE_BASED);
+				links[index] = new Link<T>(r1, r2, bytesPerMs, utilisation);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> Link<T>[] newLinkArray(int length){
+		return (Link<T>[]) new Link<?>[length];
+	}
+	
+	/**
+	 * Starts a transfer.
+	 * 
+	 * @param srcRegion
+	 * @param destRegion
+	 * @param bytes
+	 * @param message returned by {@link #completeTransfers(int, double, List)} when the transfer finishes
+	 * @param now
+	 * @return the index of the link used
+	 */
+	public int startTransfer(int srcRegion, int destRegion, double bytes, T message, double now){
+		int index = InternetCharacteristics.pathIndex(srcRegion, destRegion);
+		Link<T> link = links[index];
+		
+		link.advance(now);
+		link.flows.add(new Flow<T>(link.virtualTime + bytes, bytes, link.nextSeq++, message));
+		link.tagSum += link.virtualTime + bytes;
+		link.version++;
+		
+		return index;
+	}
+	
+	/**
+	 * Removes the transfers on a link that have finished by now.
+	 * 
+	 * @param linkIndex
+	 * @param now
+	 * @param finished receives the messages of the finished transfers
+	 */
+	public void completeTransfers(int linkIndex, double now, List<T> finished){
+		Link<T> link = links[linkIndex];
+		
+		link.advance(now);
+		double tolerance = FINISH_TOLERANCE * Math.max(1.0, link.virtualTime);
+		while (!link.flows.isEmpty() && isFinished(link, link.flows.peek(), now, tolerance)){
+			Flow<T> flow = link.flows.poll();
+			link.tagSum -= flow.finishTag;
+			link.bytesCarried += flow.bytes;
+			finished.add(flow.message);
+		}
+		if (link.flows.isEmpty()){
+			// Start again from 0 so the virtual time never grows large enough to lose precision
+			link.virtualTime = 0;
+			link.tagSum = 0;
+		}
+		link.version++;
+	}
+	
+	/**
+	 * A transfer is finished when its remaining bytes are within the tolerance, or would take
+	 * less time to send than the simulation clock can resolve.
+	 */
+	private boolean isFinished(Link<T> link, Flow<T> flow, double now, double tolerance){
+		double remaining = flow.finishTag - link.virtualTime;
+		return (remaining <= tolerance) || (now + remaining * link.flows.size() / link.bytesPerMs <= now);
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @param now
+	 * @return the time until the next transfer on the link finishes, or -1 if the link is idle
+	 */
+	public double getNextCompletionDelay(int linkIndex, double now){
+		Link<T> link = links[linkIndex];
+		if (link.flows.isEmpty()){
+			return -1;
+		}
+		
+		link.advance(now);
+		double remaining = Math.max(0, link.flows.peek().finishTag - link.virtualTime);
+		return remaining * link.flows.size() / link.bytesPerMs;
+	}
+	
+	/**
+	 * Identifies the current completion schedule of a link. It changes whenever a transfer starts 
+	 * or finishes, so a timer set for an older version can be ignored.
+	 * 
+	 * @param linkIndex
+	 * @return
+	 */
+	public long getVersion(int linkIndex){
+		return links[linkIndex].version;
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return the bytes still to be sent on the link
+	 */
+	public double getBytesInFlight(int linkIndex){
+		Link<T> link = links[linkIndex];
+		return Math.max(0, link.tagSum - link.flows.size() * link.virtualTime);
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return the number of transfers on the link
+	 */
+	public int getTransferCount(int linkIndex){
+		return links[linkIndex].flows.size();
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return the total bytes carried by finished transfers
+	 */
+	public double getBytesCarried(int linkIndex){
+		return links[linkIndex].bytesCarried;
+	}
+	
+	/**
+	 * Records the utilisation of every link up to now, including the time idle links have been idle
+	 * since their last transfer. Should be called at the end of the simulation, before the utilisation
+	 * is read.
+	 * 
+	 * @param now
+	 */
+	public void updateUtilisation(double now){
+		for (Link<T> link : links){
+			if (link != null){
+				link.advance(now);
+			}
+		}
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return the link utilisation for each hour of the day, up to the last update of the link
+	 * 			(see {@link #updateUtilisation(double)})
+	 */
+	public double[] getHourlyUtilisation(int linkIndex){
+		return links[linkIndex].utilisation.getHourlyAverages();
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return the link name, e.g. <code>0<->2</code>
+	 */
+	public String getLinkName(int linkIndex){
+		Link<T> link = links[linkIndex];
+		return link.region1 + "<->" + link.region2;
+	}
+	
+	/**
+	 * @return the number of link slots, some of which are unused (see {@link #isLink(int)})
+	 */
+	public int getLinkSlots(){
+		return links.length;
+	}
+	
+	/**
+	 * @param linkIndex
+	 * @return true if the slot holds a link
+	 */
+	public boolean isLink(int linkIndex){
+		return links[linkIndex] != null;
+	}
+	
+	private static class Link<T> {
+		final int region1;
+		final int region2;
+		final double bytesPerMs;
+		final HourlyStat utilisation;
+		final PriorityQueue<Flow<T>> flows = new PriorityQueue<Flow<T>>();
+		double virtualTime;
+		double lastUpdate;
+		/** Sum of the finish tags of the flows in progress */
+		double tagSum;
+		double bytesCarried;
+		long nextSeq;
+		long version;
+		
+		Link(int region1, int region2, double bytesPerMs, HourlyStat utilisation){
+			this.region1 = region1;
+			this.region2 = region2;
+			this.bytesPerMs = bytesPerMs;
+			this.utilisation = utilisation;
+		}
+		
+		/** Brings the virtual time up to now and records the utilisation since the last update */
+		void advance(double now){
+			if (now <= lastUpdate){
+				return;
+			}
+			
+			int n = flows.size();
+			if (n > 0){
+				virtualTime += (now - lastUpdate) * bytesPerMs / n;
+			}
+			utilisation.updateState((n > 0) ? 1.0 : 0.0, lastUpdate, now);
+			lastUpdate = now;
+		}
+	}
+	
+	private static class Flow<T> implements Comparable<Flow<T>> {
+		final double finishTag;
+		final double bytes;
+		final long seq;
+		final T message;
+		
+		Flow(double finishTag, double bytes, long seq, T message){
+			this.finishTag = finishTag;
+			this.bytes = bytes;
+			this.seq = seq;
+			this.message = message;
+		}
+		
+		public int compareTo(Flow<T> other){
+			if (finishTag != other.finishTag){
+				return (finishTag < other.finishTag) ? -1 : 1;
+			}
+			return (seq < other.seq) ? -1 : ((seq == other.seq) ? 0 : 1);
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package cloudsim.ext;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import cloudsim.ext.Constants;
+import cloudsim.ext.datacenter.CloudletQueue;
+import cloudsim.ext.datacenter.VmLoadBalancerRegistry;
 import cloudsim.ext.gui.utils.SimMeasure;
 import cloudsim.ext.event.CloudSimEvent;
 import cloudsim.ext.event.CloudSimEventListener;
@@ -12,9 +18,15 @@ import cloudsim.ext.gui.DataCenterUIElement;
 import cloudsim.ext.gui.MachineUIElement;
 import cloudsim.ext.gui.UserBaseUIElement;
 import cloudsim.ext.gui.VmAllocationUIElement;
+import cloudsim.ext.util.IOUtil;
 
 public class HeadlessRunner implements CloudSimEventListener {
 
+    /** Name of the built in scenario */
+    public static final String DEFAULT_SCENARIO = "default";
+    /** Extension of the simulation files saved from the GUI */
+    private static final String SIM_FILE_EXTENSION = ".sim";
+
     public static void main(String[] args) {
         try {
             new HeadlessRunner().run(args);
@@ -32,73 +44,48 @@ public class HeadlessRunner implements CloudSimEventListener {
             algo = args[0];
         }
         
+        if (algo.equals("--convert")) {
+            convert(args);
+            return;
+        }
+        
+        if (algo.equals("--list-policies") || VmLoadBalancerRegistry.getFactory(algo) == null) {
+            if (!algo.equals("--list-policies")) {
+                System.out.println("Unknown load balancing policy: " + algo);
+            }
+            System.out.println("Available load balancing policies:");
+            for (String policy : VmLoadBalancerRegistry.getPolicyNames()) {
+                System.out.println("  " + policy);
+            }
+            return;
+        }
+        
+        // Any arguments after the scenario name are key=value load balancer properties
+        Map<String, String> lbProperties = new HashMap<String, String>();
+        for (int i = 2; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                lbProperties.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        
         System.out.println("\n--------------------------------------------------");
         System.out.println("Testing Algorithm: " + algo);
         System.out.println("--------------------------------------------------");
         
+        String scenario = (args.length > 1) ? args[1] : DEFAULT_SCENARIO;
+        
         Simulation sim = new Simulation(this);
+        configureScenario(sim, scenario);
         sim.setLoadBalancePolicy(algo);
-        sim.setSimulationTime(5 * 60 * 1000.0); // 5 Minute Simulation for verification
-
-        // Clear default configuration
-        sim.getDataCenters().clear();
-        sim.getUserBases().clear();
-
-        // --- Configure Data Centers ---
-
-        // DC1 (High Power) - Region 0
-        // Host0: 25000 MIPS (5 CPUs * 5000 MIPS)
-        // Host1: 15000 MIPS (3 CPUs * 5000 MIPS)
-        // VMs: 20
-        DataCenterUIElement dc1 = new DataCenterUIElement("DC1", 0, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
-        List<MachineUIElement> machines1 = new ArrayList<MachineUIElement>();
-        machines1.add(new MachineUIElement(204800, 100000000, 1000000, 5, 5000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
-        machines1.add(new MachineUIElement(204800, 100000000, 1000000, 3, 5000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 1
-        dc1.setMachineList(machines1);
-        dc1.setVmAllocation(new VmAllocationUIElement(dc1, 20, 10000, 512, 1000));
-        sim.getDataCenters().add(dc1);
-
-        // DC2 (Medium Power) - Region 2
-        // Host0: 8000 MIPS (4 CPUs * 2000 MIPS)
-        // Host1: 6000 MIPS (3 CPUs * 2000 MIPS)
-        // VMs: 12
-        DataCenterUIElement dc2 = new DataCenterUIElement("DC2", 2, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
-        List<MachineUIElement> machines2 = new ArrayList<MachineUIElement>();
-        machines2.add(new MachineUIElement(204800, 100000000, 1000000, 4, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
-        machines2.add(new MachineUIElement(204800, 100000000, 1000000, 3, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 1
-        dc2.setMachineList(machines2);
-        dc2.setVmAllocation(new VmAllocationUIElement(dc2, 12, 10000, 512, 1000));
-        sim.getDataCenters().add(dc2);
-
-        // DC3 (Low Power) - Region 4
-        // Host0: 4000 MIPS (2 CPUs * 2000 MIPS)
-        // VMs: 8
-        DataCenterUIElement dc3 = new DataCenterUIElement("DC3", 4, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
-        List<MachineUIElement> machines3 = new ArrayList<MachineUIElement>();
-        machines3.add(new MachineUIElement(204800, 100000000, 1000000, 2, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
-        dc3.setMachineList(machines3);
-        dc3.setVmAllocation(new VmAllocationUIElement(dc3, 8, 10000, 512, 1000));
-        sim.getDataCenters().add(dc3);
-
-
-        // --- Configure User Bases ---
-
-        // UB1: Region 0, Peak: 3000, Req/hr: 120, Data: 10000, Peak: 3-9
-        sim.getUserBases().add(new UserBaseUIElement("UB1", 0, 120, 10000, new int[]{3, 9}, 3000, 150));
-
-        // UB2: Region 2, Peak: 1500, Req/hr: 120, Data: 9000, Peak: 6-18
-        sim.getUserBases().add(new UserBaseUIElement("UB2", 2, 120, 9000, new int[]{6, 18}, 1500, 100));
-
-        // UB3: Region 4, Peak: 2000, Req/hr: 80, Data: 7000, Peak: 12-20
-        sim.getUserBases().add(new UserBaseUIElement("UB3", 4, 80, 7000, new int[]{12, 20}, 2000, 100));
-
+        sim.setLoadBalancerProperties(lbProperties);
         
         sim.runSimulation();
 
         // --- Print Results ---
         Map<String, Object> results = sim.getResults();
         
-        System.out.println("\n========== SCENARIO default RESULTS ==========");
+        System.out.println("\n========== SCENARIO " + scenario + " RESULTS ==========");
         System.out.println("Algorithm: " + algo);
         System.out.println();
 
@@ -169,6 +156,48 @@ public class HeadlessRunner implements CloudSimEventListener {
         System.out.println("----------------------------------------");
         System.out.println();
 
+        // Waiting queues, only shown for data centers that queued anything
+        @SuppressWarnings("unchecked")
+        Map<String, CloudletQueue> queues = (Map<String, CloudletQueue>) results.get(Constants.DC_QUEUE_STATS);
+        if (queues != null) {
+            for (Map.Entry<String, CloudletQueue> entry : queues.entrySet()) {
+                CloudletQueue queue = entry.getValue();
+                if (queue.getEnqueuedCount() == 0 && queue.getDroppedCount() == 0) {
+                    continue;
+                }
+
+                System.out.println("Waiting Queue (" + entry.getKey() + "):");
+                System.out.println("Queued = " + queue.getEnqueuedCount() + ", Dropped = " + queue.getDroppedCount()
+                                   + ", High water mark = " + queue.getHighWaterMark() + ", Still waiting = " + queue.size());
+                if (dcStats != null) {
+                    SimMeasure waiting = dcStats.get(entry.getKey() + "||" + Constants.DC_QUEUE_WAITING_TIME);
+                    if (waiting != null && waiting.getCount() > 0) {
+                        System.out.printf("Avg wait = %.2f ms, Max wait = %.2f ms%n", waiting.getAvg(), waiting.getMax());
+                    }
+                }
+                System.out.println();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, double[]> links = (Map<String, double[]>) results.get(Constants.LINK_UTILISATION_STATS);
+        if (links != null && !links.isEmpty()) {
+            System.out.println("Link Utilisation (peak hour):");
+            for (Map.Entry<String, double[]> entry : links.entrySet()) {
+                double peak = 0;
+                int peakHour = 0;
+                double[] hourly = entry.getValue();
+                for (int h = 0; h < hourly.length; h++) {
+                    if (hourly[h] > peak) {
+                        peak = hourly[h];
+                        peakHour = h;
+                    }
+                }
+                System.out.printf("%s = %.4f%% at hour %d%n", entry.getKey(), peak * 100, peakHour);
+            }
+            System.out.println();
+        }
+
         // 4. Costs
         @SuppressWarnings("unchecked")
         Map<String, Map<String, Double>> costs = (Map<String, Map<String, Double>>) results.get(Constants.COSTS);
@@ -187,6 +216,130 @@ public class HeadlessRunner implements CloudSimEventListener {
         System.out.println("========================================");
     }
 
+    /**
+     * Sets up the data centers, user bases and duration of a scenario.
+     *
+     * @param sim
+     * @param scenario <code>default</code> for the built in scenario, the path of a simulation file
+     *        saved from the GUI (<code>.sim</code>), or the path of a {@link ScenarioFile}
+     */
+    public static void configureScenario(Simulation sim, String scenario) throws Exception {
+        if (scenario.equals(DEFAULT_SCENARIO)) {
+            configureDefaultScenario(sim);
+        } else if (scenario.endsWith(SIM_FILE_EXTENSION)) {
+            loadSimulationFile(sim, new File(scenario));
+        } else {
+            ScenarioFile.read(new File(scenario), sim);
+        }
+    }
+
+    private static void configureDefaultScenario(Simulation sim) {
+        sim.setSimulationTime(5 * 60 * 1000.0); // 5 Minute Simulation for verification
+
+        // Clear default configuration
+        sim.getDataCenters().clear();
+        sim.getUserBases().clear();
+
+        // --- Configure Data Centers ---
+
+        // DC1 (High Power) - Region 0
+        // Host0: 25000 MIPS (5 CPUs * 5000 MIPS)
+        // Host1: 15000 MIPS (3 CPUs * 5000 MIPS)
+        // VMs: 20
+        DataCenterUIElement dc1 = new DataCenterUIElement("DC1", 0, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
+        List<MachineUIElement> machines1 = new ArrayList<MachineUIElement>();
+        machines1.add(new MachineUIElement(204800, 100000000, 1000000, 5, 5000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
+        machines1.add(new MachineUIElement(204800, 100000000, 1000000, 3, 5000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 1
+        dc1.setMachineList(machines1);
+        dc1.setVmAllocation(new VmAllocationUIElement(dc1, 20, 10000, 512, 1000));
+        sim.getDataCenters().add(dc1);
+
+        // DC2 (Medium Power) - Region 2
+        // Host0: 8000 MIPS (4 CPUs * 2000 MIPS)
+        // Host1: 6000 MIPS (3 CPUs * 2000 MIPS)
+        // VMs: 12
+        DataCenterUIElement dc2 = new DataCenterUIElement("DC2", 2, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
+        List<MachineUIElement> machines2 = new ArrayList<MachineUIElement>();
+        machines2.add(new MachineUIElement(204800, 100000000, 1000000, 4, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
+        machines2.add(new MachineUIElement(204800, 100000000, 1000000, 3, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 1
+        dc2.setMachineList(machines2);
+        dc2.setVmAllocation(new VmAllocationUIElement(dc2, 12, 10000, 512, 1000));
+        sim.getDataCenters().add(dc2);
+
+        // DC3 (Low Power) - Region 4
+        // Host0: 4000 MIPS (2 CPUs * 2000 MIPS)
+        // VMs: 8
+        DataCenterUIElement dc3 = new DataCenterUIElement("DC3", 4, "x86", "Linux", "Xen", 0.1, 0.05, 0.1, 0.1);
+        List<MachineUIElement> machines3 = new ArrayList<MachineUIElement>();
+        machines3.add(new MachineUIElement(204800, 100000000, 1000000, 2, 2000, MachineUIElement.VmAllocationPolicy.TIME_SHARED)); // Host 0
+        dc3.setMachineList(machines3);
+        dc3.setVmAllocation(new VmAllocationUIElement(dc3, 8, 10000, 512, 1000));
+        sim.getDataCenters().add(dc3);
+
+
+        // --- Configure User Bases ---
+
+        // UB1: Region 0, Peak: 3000, Req/hr: 120, Data: 10000, Peak: 3-9
+        sim.getUserBases().add(new UserBaseUIElement("UB1", 0, 120, 10000, new int[]{3, 9}, 3000, 150));
+
+        // UB2: Region 2, Peak: 1500, Req/hr: 120, Data: 9000, Peak: 6-18
+        sim.getUserBases().add(new UserBaseUIElement("UB2", 2, 120, 9000, new int[]{6, 18}, 1500, 100));
+
+        // UB3: Region 4, Peak: 2000, Req/hr: 80, Data: 7000, Peak: 12-20
+        sim.getUserBases().add(new UserBaseUIElement("UB3", 4, 80, 7000, new int[]{12, 20}, 2000, 100));
+    }
+
+    /**
+     * Loads a simulation file saved by the GUI configuration screen. The load balancing policy
+     * stored in the file is ignored, it is given on the command line.
+     */
+    @SuppressWarnings("unchecked")
+    private static void loadSimulationFile(Simulation sim, File simFile) throws IOException {
+        List<Object> entities = (List<Object>) IOUtil.loadFromXml(simFile);
+
+        sim.getUserBases().replaceContent((List<UserBaseUIElement>) entities.get(0));
+        sim.getDataCenters().replaceContent((List<DataCenterUIElement>) entities.get(1));
+
+        double duration = Double.parseDouble(((String) entities.get(3)).trim());
+        String timeUnit = (String) entities.get(4);
+        if (timeUnit.equals("min")) {
+            sim.setSimulationTime(duration * Constants.MILLI_SECONDS_TO_MINS);
+        } else if (timeUnit.equals("hours")) {
+            sim.setSimulationTime(duration * Constants.MILLI_SECONDS_TO_HOURS);
+        } else if (timeUnit.equals("days")) {
+            sim.setSimulationTime(duration * Constants.MILLI_SECONDS_TO_DAYS);
+        } else {
+            sim.setSimulationTime(duration * 1000);
+        }
+
+        sim.setUserGroupingFactor(Integer.parseInt(((String) entities.get(5)).trim()));
+        sim.setDcRequestGroupingFactor(Integer.parseInt(((String) entities.get(6)).trim()));
+        sim.setInstructionLengthPerRequest(Integer.parseInt(((String) entities.get(7)).trim()));
+        sim.setServiceBrokerPolicy((String) entities.get(8));
+    }
+
+    /**
+     * Writes a scenario, typically a simulation file saved from the GUI, as a {@link ScenarioFile}.
+     * Arguments are <code>--convert &lt;scenario&gt; &lt;output file&gt;</code>.
+     */
+    private void convert(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: HeadlessRunner --convert <scenario> <output file>");
+            return;
+        }
+        
+        Simulation sim = new Simulation(this);
+        configureScenario(sim, args[1]);
+        FileWriter out = new FileWriter(args[2]);
+        try {
+            ScenarioFile.write(sim, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + sim.getDataCenters().size() + " data centers and " + sim.getUserBases().size()
+                           + " user bases to " + args[2]);
+    }
+
     @Override
     public void cloudSimEventFired(CloudSimEvent e) {
         // System.out.println("Event: " + e.getId());
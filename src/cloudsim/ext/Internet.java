@@ -2,6 +2,7 @@ package cloudsim.ext;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -13,6 +14,7 @@ import cloudsim.ext.event.CloudsimObservable;
 import cloudsim.ext.servicebroker.CloudAppServiceBroker;
 import cloudsim.ext.util.CommPath;
 import eduni.simjava.Sim_event;
+import eduni.simjava.Sim_stat;
 import eduni.simjava.Sim_system;
 import gridsim.GridSim;
 
@@ -25,6 +27,11 @@ import gridsim.GridSim;
  * to the GUI. This is not perfect design, but done so to minimize the number of CloudSim entities
  * in the simulation run.
  * 
+ * By default the transfer delay of each message is estimated once, when it enters the Internet. 
+ * With the system property <code>cloudsim.ext.net.model=fluid</code> messages share the bandwidth
+ * of their link through a {@link FluidLinkModel} instead, and are delivered when their transfer 
+ * finishes plus the network latency.
+ * 
  * @author Bhathiya Wickremasinghe
  */
 public class Internet extends CloudSim implements CloudsimObservable {
@@ -36,12 +43,32 @@ public class Internet extends CloudSim implements CloudsimObservable {
 	private Map<Integer, CloudAppServiceBroker> serviceBrokers = new HashMap<Integer, CloudAppServiceBroker>();
 	private boolean running = false;
 	private double lastProgressUpdate = 0;
+	private FluidLinkModel<PendingMessage> linkModel;
+	private List<PendingMessage> finishedTransfers = new ArrayList<PendingMessage>();
+	private InternetCharacteristics internetCharacteristics;
 	
 	public Internet(CloudSimEventListener progressListener) throws Exception {
+		this(progressListener, InternetCharacteristics.getInstance());
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param progressListener
+	 * @param internetCharacteristics the network model of the simulation
+	 */
+	public Internet(CloudSimEventListener progressListener, InternetCharacteristics internetCharacteristics) throws Exception {
 		super("Internet");
 		
+		this.internetCharacteristics = internetCharacteristics;
 		listeners = new ArrayList<CloudSimEventListener>();
 		addCloudSimEventListener(progressListener);
+		
+		if ("fluid".equalsIgnoreCase(System.getProperty("cloudsim.ext.net.model"))){
+			Sim_stat stat = new Sim_stat();
+			linkModel = new FluidLinkModel<PendingMessage>(internetCharacteristics, stat);
+			set_stat(stat);
+		}
 	}
 	
 	public void addServiceBroker(int appId, CloudAppServiceBroker broker){
@@ -66,6 +93,16 @@ public class Internet extends CloudSim implements CloudsimObservable {
 	}
 	
 	private void processEvent(Sim_event ev){
+		if (ev.get_tag() == Constants.LINK_TIMER_TAG){
+			processLinkTimer((long[]) ev.get_data());
+			return;
+		}
+		
+		if (ev.get_data() instanceof RequestBatch && ev.get_tag() == Constants.REQUEST_INTERNET_CLOUDLET_TAG){
+			routeRequestBatch((RequestBatch) ev.get_data());
+			return;
+		}
+		
 		InternetCloudlet cloudlet;
 		if (ev.get_data() instanceof InternetCloudlet){
 			cloudlet = (InternetCloudlet) ev.get_data();
@@ -74,26 +111,32 @@ public class Internet extends CloudSim implements CloudsimObservable {
 			return;
 		}
 		
-		String srcName = null;
 		String destName = null;
+		int srcRegion;
+		int destRegion;
 		double delay = 0.0;
-		InternetCharacteristics internetCharacteristics = InternetCharacteristics.getInstance();		
     	
 		GeoLocatable originator = cloudlet.getOriginator();
 		
 		//TODO refactor below switch statement to take out more common code
 		switch (ev.get_tag()) {
         case Constants.REQUEST_INTERNET_CLOUDLET_TAG:
-        	srcName = originator.get_name();
         	int appId = cloudlet.getAppId();
         	CloudAppServiceBroker serviceBroker = serviceBrokers.get(appId);
         	destName = serviceBroker.getDestination(originator);
+        	srcRegion = originator.getRegion();
+        	destRegion = internetCharacteristics.getRegion(destName);
         	
-        	CommPath commPath1 = internetCharacteristics.addTraffic(srcName, destName, cloudlet.getRequestCount());
+        	CommPath commPath1 = internetCharacteristics.addTraffic(srcRegion, destRegion, cloudlet.getRequestCount());
         	cloudlet.addData(Constants.PARAM_COMM_PATH, commPath1);
         	
         	double singleRequestSize = cloudlet.getDataSize();
-        	delay = internetCharacteristics.getTotalDelay(srcName, destName, singleRequestSize);
+        	if (linkModel != null){
+        		startTransfer(srcRegion, destRegion, destName, Constants.REQUEST_INTERNET_CLOUDLET_TAG, cloudlet, 
+        					  cloudlet.getDataSize() * cloudlet.getRequestCount());
+        		break;
+        	}
+        	delay = internetCharacteristics.getTotalDelay(srcRegion, destRegion, singleRequestSize);
         	
 //        	System.out.println("Internet sending cloudlet to broker " + destName + " with a delay" + delay);
         	send(destName, delay, Constants.REQUEST_INTERNET_CLOUDLET_TAG, ev.get_data());
@@ -101,14 +144,23 @@ public class Internet extends CloudSim implements CloudsimObservable {
         	break;
         	
         case Constants.RESPONSE_INTERNET_CLOUDLET_TAG:      
-        	srcName = GridSim.getEntityName(ev.get_src());
 			destName = originator.get_name();
+			srcRegion = internetCharacteristics.getRegion(ev.get_src());
+			if (srcRegion == -1){
+				srcRegion = internetCharacteristics.getRegion(GridSim.getEntityName(ev.get_src()));
+			}
+			destRegion = originator.getRegion();
 			
-			CommPath commPath2 = internetCharacteristics.addTraffic(srcName, destName, cloudlet.getRequestCount());
+			CommPath commPath2 = internetCharacteristics.addTraffic(srcRegion, destRegion, cloudlet.getRequestCount());
         	cloudlet.addData(Constants.PARAM_COMM_PATH, commPath2);
         	
         	singleRequestSize = cloudlet.getDataSize();
-        	delay = internetCharacteristics.getTotalDelay(srcName, destName, singleRequestSize);
+        	if (linkModel != null){
+        		startTransfer(srcRegion, destRegion, destName + "R", Constants.RESPONSE_INTERNET_CLOUDLET_TAG, cloudlet,
+        					  cloudlet.getDataSize() * cloudlet.getRequestCount());
+        		break;
+        	}
+        	delay = internetCharacteristics.getTotalDelay(srcRegion, destRegion, singleRequestSize);
         	
 //        	System.out.println(GridSim.clock() + ": Internet returning cloudlet "+ cloudlet.getCloudletId() + "to userbase, transfer delay=" + delay);
         	
@@ -117,6 +169,101 @@ public class Internet extends CloudSim implements CloudsimObservable {
 		}		
 	}
 	
+	/**
+	 * Routes the groups of a batch through the service broker. Consecutive groups that go to the same
+	 * data center travel on as one batch, so a batch is only split where the destination changes.
+	 */
+	private void routeRequestBatch(RequestBatch batch){
+		CloudAppServiceBroker serviceBroker = serviceBrokers.get(batch.getAppId());
+		GeoLocatable originator = batch.getOriginator();
+		
+		int from = 0;
+		String runDest = null;
+		for (int i = 0; i < batch.getGroupCount(); i++){
+			String dest = serviceBroker.getDestination(originator);
+			if (runDest != null && !dest.equals(runDest)){
+				sendRequestBatch(batch.subBatch(from, i), runDest);
+				from = i;
+			}
+			runDest = dest;
+		}
+		if (runDest != null){
+			sendRequestBatch(batch.subBatch(from, batch.getGroupCount()), runDest);
+		}
+	}
+	
+	private void sendRequestBatch(RequestBatch batch, String destName){
+		int srcRegion = batch.getOriginator().getRegion();
+		int destRegion = internetCharacteristics.getRegion(destName);
+		
+		batch.setCommPath(internetCharacteristics.addTraffic(srcRegion, destRegion, batch.getRequestCount()));
+		if (linkModel != null){
+			startTransfer(srcRegion, destRegion, destName, Constants.REQUEST_INTERNET_CLOUDLET_TAG, batch,
+						  (double) batch.getDataSizePerRequest() * batch.getRequestCount());
+		} else {
+			double delay = internetCharacteristics.getTotalDelay(srcRegion, destRegion, batch.getDataSizePerRequest());
+			send(destName, delay, Constants.REQUEST_INTERNET_CLOUDLET_TAG, batch);
+		}
+	}
+	
+	/**
+	 * Puts a message on its link.
+	 * 
+	 * @param bytes the size of the message, the per request data size times the number of requests
+	 */
+	private void startTransfer(int srcRegion, int destRegion, String destName, int tag, Object payload, double bytes){
+		PendingMessage message = new PendingMessage(srcRegion, destRegion, destName, tag, payload);
+		
+		int link = linkModel.startTransfer(srcRegion, destRegion, bytes, message, GridSim.clock());
+		scheduleLinkTimer(link);
+	}
+	
+	/**
+	 * Delivers the messages whose transfer has finished, after the network latency.
+	 * 
+	 * @param timer link index and schedule version the timer was set for
+	 */
+	private void processLinkTimer(long[] timer){
+		int link = (int) timer[0];
+		if (linkModel.getVersion(link) != timer[1]){
+			//The schedule changed since this timer was set
+			return;
+		}
+		
+		linkModel.completeTransfers(link, GridSim.clock(), finishedTransfers);
+		for (PendingMessage m : finishedTransfers){
+			double latency = internetCharacteristics.getLatencyDelay(m.srcRegion, m.destRegion);
+			send(m.destName, latency, m.tag, m.payload);
+		}
+		finishedTransfers.clear();
+		
+		scheduleLinkTimer(link);
+	}
+	
+	private void scheduleLinkTimer(int link){
+		double delay = linkModel.getNextCompletionDelay(link, GridSim.clock());
+		if (delay >= 0){
+			send(get_id(), delay, Constants.LINK_TIMER_TAG, new long[]{link, linkModel.getVersion(link)});
+		}
+	}
+	
+	/**
+	 * @return the utilisation of each link that carried any data, for each hour of the day, keyed
+	 * 		on the link name. Empty unless the fluid link model is in use.
+	 */
+	public Map<String, double[]> getLinkUtilisation(){
+		Map<String, double[]> utilisation = new LinkedHashMap<String, double[]>();
+		if (linkModel != null){
+			linkModel.updateUtilisation(GridSim.clock());
+			for (int i = 0; i < linkModel.getLinkSlots(); i++){
+				if (linkModel.isLink(i) && linkModel.getBytesCarried(i) > 0){
+					utilisation.put(linkModel.getLinkName(i), linkModel.getHourlyUtilisation(i));
+				}
+			}
+		}
+		return utilisation;
+	}
+	
 	public boolean isRunning(){
 		return running;
 	}
@@ -154,4 +301,22 @@ public class Internet extends CloudSim implements CloudsimObservable {
 			l.cloudSimEventFired(e);
 		}
 	}
+	
+	/** A message in transit on a link of the fluid model */
+	private static class PendingMessage {
+		final int srcRegion;
+		final int destRegion;
+		final String destName;
+		final int tag;
+		/** An {@link InternetCloudlet} or a {@link RequestBatch} */
+		final Object payload;
+		
+		PendingMessage(int srcRegion, int destRegion, String destName, int tag, Object payload){
+			this.srcRegion = srcRegion;
+			this.destRegion = destRegion;
+			this.destName = destName;
+			this.tag = tag;
+			this.payload = payload;
+		}
+	}
 }
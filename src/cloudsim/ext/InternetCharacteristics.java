@@ -6,20 +6,33 @@ import gridsim.util.Poisson;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import cloudsim.ext.util.CommPath;
 import cloudsim.ext.util.IOUtil;
+import eduni.simjava.Sim_entity;
+import eduni.simjava.Sim_system;
 
 /**
  * This class holds the data that define the behaviour of the Internet which includes latencies
  * and bandwidth, and also provides methods to access those information.
  *
- * This class is a singleton.
+ * Latency, bandwidth and traffic are held in flat arrays indexed by region pair (see {@link #pathIndex(int, int)}),
+ * so the delay of a message costs a few array reads once the regions of its end points are known.
+ * Regions can be looked up by entity name, or without any hashing by simulation entity id.
+ *
+ * The shared instance returned by {@link #getInstance()} loads the latency and bandwidth matrices once
+ * and holds the configured values. Each {@link Simulation} run works on its own instance created from it,
+ * which holds the entities, traffic and service latencies of the run, and its own delay distributions. The matrices can also be supplied
+ * up front with {@link #setConfiguredMatrices(double[][], double[][])}, so that {@link BatchRunner} parses
+ * them once for all its runs.
  *
  * @author Bhathiya Wickremasinghe
  *
@@ -27,49 +40,131 @@ import cloudsim.ext.util.IOUtil;
 public class InternetCharacteristics {
 
 	private static final int STANDARD_POISSON_MEAN = 100;
+	private static final int REGIONS = Constants.WORLD_REGIONS;
 
 	private static InternetCharacteristics instance = null;
+	private static double[][] configuredLatencyMatrix;
+	private static double[][] configuredBwMatrix;
 	private double[][] latencyMatrix;
 	private double[][] bwMatrix;
 	private Map<String, Integer> entityLocations = null;
 	private List<GeoLocatable> allEntities = null;
 	private final Map<Integer, List<Integer>> proximityCache;
-	private final Map<CommPath, Long> trafficLevels;
+	/** Latency in ms, indexed by the directed region pair */
+	private final double[] latency;
+	/** Bandwidth in bytes, indexed by the directed region pair */
+	private final double[] bandwidthBytes;
+	/** 
+	 * Requests in transit, indexed by {@link #pathIndex(int, int)}. Paths are undirected. 
+	 * Updated atomically so that readers such as the GUI can sample it from other threads.
+	 */
+	private final AtomicLongArray trafficLevels;
+	/** One shared instance per path, indexed by {@link #pathIndex(int, int)} */
+	private final CommPath[] commPaths;
+	/** Region of each registered entity, indexed by simulation entity id. -1 if unknown. */
+	private int[] entityRegions;
 	private final Map<String, Double[]> serviceLatencies;
 
 	private final Poisson availableBwDistribution;
 	private final Poisson pingDelayDistribution;
+	/** Seeds the delay distributions started from, given to the instances created from this one */
+	private final long pingDelaySeed;
+	private final long availableBwSeed;
 
 	/**
-	 * No args constructor.
+	 * Creates the shared instance and its delay distributions.
 	 *
+	 * @param latencyMatrix the configured latency matrix, or null to load it from the configuration file
+	 * @param bwMatrix the configured bandwidth matrix, or null to load it from the configuration file
 	 * @throws IOException - If loading of the latency matrix or bw matrix fails.
 	 * @throws URISyntaxException
 	 */
-	private InternetCharacteristics() throws IOException, URISyntaxException{
+	private InternetCharacteristics(double[][] latencyMatrix, double[][] bwMatrix) throws IOException, URISyntaxException{
+		//The seeds come from simjava's global sequence, as a Poisson created without a seed would take them
+		this((latencyMatrix != null) ? latencyMatrix : loadMatrix(Constants.DELAYMATRIX_FILE), 
+			 (bwMatrix != null) ? bwMatrix : loadMatrix(Constants.BWMATRIX_FILE),
+			 Sim_system.next_seed(),
+			 Sim_system.next_seed());
+	}
+
+	/**
+	 * Creates an instance with the latency and bandwidth matrices of another, without reloading them.
+	 * The new instance has no entities and no traffic. 
+	 * 
+	 * Its delay distributions are its own and start from the seeds the template's started from, so 
+	 * each instance draws the same delays regardless of earlier runs. They do not take seeds from 
+	 * simjava's global sequence, which would shift every random stream created after them.
+	 *
+	 * @param template
+	 */
+	public InternetCharacteristics(InternetCharacteristics template){
+		this(template.latencyMatrix, template.bwMatrix, template.pingDelaySeed, template.availableBwSeed);
+	}
+
+	/**
+	 * Creates an instance with the latency and bandwidth matrices of another, like 
+	 * {@link #InternetCharacteristics(InternetCharacteristics)}, with delay distributions seeded 
+	 * from the seed of the run.
+	 *
+	 * @param template
+	 * @param seed seed of the run
+	 */
+	public InternetCharacteristics(InternetCharacteristics template, long seed){
+		this(template, new Random(seed));
+	}
+
+	private InternetCharacteristics(InternetCharacteristics template, Random seeds){
+		this(template.latencyMatrix, template.bwMatrix, nextPoissonSeed(seeds), nextPoissonSeed(seeds));
+	}
+
+	private InternetCharacteristics(double[][] latencyMatrix, double[][] bwMatrix, 
+									long pingDelaySeed, long availableBwSeed){
 		entityLocations = new HashMap<String, Integer>();
 		allEntities = new ArrayList<GeoLocatable>();
 
-		latencyMatrix = (double[][]) IOUtil.loadFromXml(getClass().getClassLoader().getResourceAsStream(Constants.DELAYMATRIX_FILE));
-		bwMatrix = (double[][]) IOUtil.loadFromXml(getClass().getClassLoader().getResourceAsStream(Constants.BWMATRIX_FILE));
+		this.latencyMatrix = latencyMatrix;
+		this.bwMatrix = bwMatrix;
 
 		proximityCache = new HashMap<Integer, List<Integer>>();
-		trafficLevels = Collections.synchronizedMap(new HashMap<CommPath, Long>());
+		latency = new double[REGIONS * REGIONS];
+		bandwidthBytes = new double[REGIONS * REGIONS];
+		refreshLatencies();
+		refreshBandwidths();
+		
+		trafficLevels = new AtomicLongArray(REGIONS * REGIONS);
+		commPaths = new CommPath[REGIONS * REGIONS];
+		for (int r1 = 0; r1 < REGIONS; r1++){
+			for (int r2 = r1; r2 < REGIONS; r2++){
+				commPaths[pathIndex(r1, r2)] = new CommPath(r1, r2);
+			}
+		}
+		entityRegions = new int[0];
 		serviceLatencies = Collections.synchronizedMap(new HashMap<String, Double[]>());
 
-		pingDelayDistribution = new Poisson("PingDelayDistribution", STANDARD_POISSON_MEAN);
-		availableBwDistribution = new Poisson("AvailableBwDistribution", STANDARD_POISSON_MEAN);
+		this.pingDelaySeed = pingDelaySeed;
+		this.availableBwSeed = availableBwSeed;
+		pingDelayDistribution = new Poisson("PingDelayDistribution", STANDARD_POISSON_MEAN, pingDelaySeed);
+		availableBwDistribution = new Poisson("AvailableBwDistribution", STANDARD_POISSON_MEAN, availableBwSeed);
+	}
+
+	/** A seed for the simjava generators, which accept 1 to 2^31 - 2 */
+	private static long nextPoissonSeed(Random seeds){
+		return 1 + seeds.nextInt(Integer.MAX_VALUE - 1);
+	}
+
+	private static double[][] loadMatrix(String file) throws IOException{
+		return (double[][]) IOUtil.loadFromXml(InternetCharacteristics.class.getClassLoader().getResourceAsStream(file));
 	}
 
 	/**
-	 * Returns the singleton instance
+	 * Returns the shared instance, which holds the configured latency and bandwidth matrices.
 	 *
 	 * @return
 	 */
-	public static InternetCharacteristics getInstance(){
+	public static synchronized InternetCharacteristics getInstance(){
 		if (instance == null){
 			try {
-				instance = new InternetCharacteristics();
+				instance = new InternetCharacteristics(configuredLatencyMatrix, configuredBwMatrix);
 			} catch (Exception e) {
 				e.printStackTrace();
 				throw new RuntimeException("Failed to load delay matrix. Please make sure config file is" +
@@ -80,6 +175,19 @@ public class InternetCharacteristics {
 		return instance;
 	}
 
+	/**
+	 * Supplies the latency and bandwidth matrices of the shared instance, so they are not loaded from 
+	 * the configuration files. Only takes effect if the shared instance has not been created yet. 
+	 * The matrices are not copied and must not be modified afterwards.
+	 * 
+	 * @param latencyMatrix
+	 * @param bwMatrix
+	 */
+	public static synchronized void setConfiguredMatrices(double[][] latencyMatrix, double[][] bwMatrix){
+		configuredLatencyMatrix = latencyMatrix;
+		configuredBwMatrix = bwMatrix;
+	}
+
 	/**
 	 * @return the delayMatrixs
 	 */
@@ -92,6 +200,44 @@ public class InternetCharacteristics {
 	 */
 	public void setLatencyMatrix(double[][] delayMatrix) {
 		this.latencyMatrix = delayMatrix;
+		refreshLatencies();
+		proximityCache.clear();
+	}
+	
+	private void refreshLatencies(){
+		for (int r1 = 0; r1 < REGIONS; r1++){
+			for (int r2 = 0; r2 < REGIONS; r2++){
+				latency[r1 * REGIONS + r2] = latencyMatrix[r1][r2];
+			}
+		}
+	}
+	
+	private void refreshBandwidths(){
+		for (int r1 = 0; r1 < REGIONS; r1++){
+			for (int r2 = 0; r2 < REGIONS; r2++){
+				bandwidthBytes[r1 * REGIONS + r2] = bwMatrix[r1][r2] * 1024 * 1024;
+			}
+		}
+	}
+	
+	/**
+	 * Index of the undirected path between two regions in the traffic and path tables.
+	 * 
+	 * @param r1
+	 * @param r2
+	 * @return
+	 */
+	public static int pathIndex(int r1, int r2){
+		return (r1 <= r2) ? (r1 * REGIONS + r2) : (r2 * REGIONS + r1);
+	}
+	
+	/**
+	 * @param r1
+	 * @param r2
+	 * @return the shared {@link CommPath} between two regions
+	 */
+	public CommPath getCommPath(int r1, int r2){
+		return commPaths[pathIndex(r1, r2)];
 	}
 
 	/**
@@ -104,6 +250,32 @@ public class InternetCharacteristics {
 		String name = entity.get_name();
 		entityLocations.put(name, region);
 		allEntities.add(entity);
+		
+		if (entity instanceof Sim_entity){
+			int id = ((Sim_entity) entity).get_id();
+			if (id >= entityRegions.length){
+				int oldLength = entityRegions.length;
+				entityRegions = Arrays.copyOf(entityRegions, Math.max(id + 1, oldLength * 2));
+				Arrays.fill(entityRegions, oldLength, entityRegions.length, -1);
+			}
+			entityRegions[id] = region;
+		}
+	}
+	
+	/**
+	 * @param entityName
+	 * @return the region of a registered entity
+	 */
+	public int getRegion(String entityName){
+		return entityLocations.get(entityName);
+	}
+	
+	/**
+	 * @param entityId simulation entity id
+	 * @return the region of a registered entity, or -1 if the id is not registered
+	 */
+	public int getRegion(int entityId){
+		return (entityId >= 0 && entityId < entityRegions.length) ? entityRegions[entityId] : -1;
 	}
 
 	/**
@@ -137,10 +309,7 @@ public class InternetCharacteristics {
 	 * @return
 	 */
 	public double getDataTransferDelay(String src, String dest, double reqSize){
-		int srcRegion = entityLocations.get(src);
-		int destRegion = entityLocations.get(dest);
-
-		return getDataTransferDelay(new CommPath(srcRegion, destRegion), reqSize);
+		return getDataTransferDelay(getRegion(src), getRegion(dest), reqSize);
 	}
 
 	/**
@@ -151,11 +320,23 @@ public class InternetCharacteristics {
 	 * @return
 	 */
 	public double getDataTransferDelay(CommPath commPath, double perUserReqSize){
-		double availableBw = bwMatrix[commPath.getRegion1()][commPath.getRegion2()] * 1024 * 1024; //in bytes
+		return getDataTransferDelay(commPath.getRegion1(), commPath.getRegion2(), perUserReqSize);
+	}
+
+	/**
+	 * Returns the data transfer delay, based on the current traffic level and bw matrix.
+	 *
+	 * @param srcRegion
+	 * @param destRegion
+	 * @param perUserReqSize
+	 * @return
+	 */
+	public double getDataTransferDelay(int srcRegion, int destRegion, double perUserReqSize){
+		double availableBw = bandwidthBytes[srcRegion * REGIONS + destRegion]; //in bytes
 
 		double avgPerUserBw;
-		if (trafficLevels.containsKey(commPath)){
-			long currentTraffic = trafficLevels.get(commPath);
+		long currentTraffic = trafficLevels.get(pathIndex(srcRegion, destRegion));
+		if (currentTraffic > 0){
 			avgPerUserBw = availableBw / currentTraffic;
 		} else {
 			avgPerUserBw = availableBw;
@@ -176,16 +357,42 @@ public class InternetCharacteristics {
 	 * @return
 	 */
 	public double getTotalDelay(String src, String dest, double reqSize){
-		int srcRegion = entityLocations.get(src);
-		int destRegion = entityLocations.get(dest);
+		return getTotalDelay(getRegion(src), getRegion(dest), reqSize);
+	}
 
-		CommPath commPath = new CommPath(srcRegion, destRegion);
-		double totalDelay = latencyMatrix[srcRegion][destRegion] * pingDelayDistribution.sample() / STANDARD_POISSON_MEAN
-		                    + getDataTransferDelay(commPath, reqSize);
+	/**
+	 * Returns the total delay. i.e. network latency + data transfer delay
+	 * @param srcRegion
+	 * @param destRegion
+	 * @param reqSize
+	 * @return
+	 */
+	public double getTotalDelay(int srcRegion, int destRegion, double reqSize){
+		double totalDelay = getLatencyDelay(srcRegion, destRegion)
+		                    + getDataTransferDelay(srcRegion, destRegion, reqSize);
 
 		return totalDelay;
 	}
 
+	/**
+	 * Returns the network latency between two regions, without any data transfer delay.
+	 * @param srcRegion
+	 * @param destRegion
+	 * @return
+	 */
+	public double getLatencyDelay(int srcRegion, int destRegion){
+		return latency[srcRegion * REGIONS + destRegion] * pingDelayDistribution.sample() / STANDARD_POISSON_MEAN;
+	}
+
+	/**
+	 * @param srcRegion
+	 * @param destRegion
+	 * @return the bandwidth between two regions in bytes per second
+	 */
+	public double getBandwidth(int srcRegion, int destRegion){
+		return bandwidthBytes[srcRegion * REGIONS + destRegion];
+	}
+
 	/**
 	 * Returns a list of region id's ordered in the ascending order of lowest latency
 	 * @param requestorRegion
@@ -229,53 +436,81 @@ public class InternetCharacteristics {
 	 */
 	public void setBwMatrix(double[][] bwMatrix) {
 		this.bwMatrix = bwMatrix;
+		refreshBandwidths();
 	}
 
 	public CommPath addTraffic(String src, String dest, long requestCount){
-		int srcRegion = entityLocations.get(src);
-		int destRegion = entityLocations.get(dest);
+		return addTraffic(getRegion(src), getRegion(dest), requestCount);
+	}
 
-		CommPath commPath = new CommPath(srcRegion, destRegion);
+	/**
+	 * @param srcRegion
+	 * @param destRegion
+	 * @param requestCount
+	 * @return the shared path between the regions
+	 */
+	public CommPath addTraffic(int srcRegion, int destRegion, long requestCount){
+		CommPath commPath = getCommPath(srcRegion, destRegion);
 		addTraffic(commPath, requestCount);
 
 		return commPath;
 	}
 
+	/**
+	 * Atomically adds requests to the traffic on a path.
+	 * 
+	 * @param path
+	 * @param requestCount
+	 */
 	public void addTraffic(CommPath path, long requestCount){
-		long currentLevel = 0;
-		if (trafficLevels.containsKey(path)){
-			currentLevel = trafficLevels.remove(path);
-		}
+		trafficLevels.addAndGet(pathIndex(path.getRegion1(), path.getRegion2()), requestCount);
 
-		currentLevel += requestCount;
-
-		trafficLevels.put(path, currentLevel);
-
-//		System.out.println("Traffic level:" + path + ":" + currentLevel);
+//		System.out.println("Traffic level:" + path + ":" + getTrafficLevel(path));
 	}
 
 	public void removeTraffic(String src, String dest, long requestCount){
-		int srcRegion = entityLocations.get(src);
-		int destRegion = entityLocations.get(dest);
-
-		removeTraffic(new CommPath(srcRegion, destRegion), requestCount);
+		removeTraffic(getCommPath(getRegion(src), getRegion(dest)), requestCount);
 	}
 
+	/**
+	 * Atomically removes requests from the traffic on a path. The level does not go below 0.
+	 * 
+	 * @param path
+	 * @param requestCount
+	 */
 	public void removeTraffic(CommPath path, long requestCount){
-		long currentLevel = 0;
-		if (trafficLevels.containsKey(path)){
-			currentLevel = trafficLevels.remove(path);
-			currentLevel -= requestCount;
-
-			if (currentLevel < 0){
+		int index = pathIndex(path.getRegion1(), path.getRegion2());
+		long currentLevel;
+		long newLevel;
+		do {
+			currentLevel = trafficLevels.get(index);
+			newLevel = currentLevel - requestCount;
+			if (newLevel < 0){
 //				throw new RuntimeException("Traffic level is negative. Please check the logic.");
-				currentLevel = 0;
+				newLevel = 0;
 			}
+		} while (!trafficLevels.compareAndSet(index, currentLevel, newLevel));
 
-			trafficLevels.put(path, currentLevel);
-		}
-
-//		System.out.println("Traffic level:" + path + ":" + currentLevel);
+//		System.out.println("Traffic level:" + path + ":" + newLevel);
+	}
+	
+	/**
+	 * @param path
+	 * @return the number of requests currently in transit on the path
+	 */
+	public long getTrafficLevel(CommPath path){
+		return getTrafficLevel(path.getRegion1(), path.getRegion2());
+	}
+	
+	/**
+	 * Safe to call from any thread.
+	 * 
+	 * @param r1
+	 * @param r2
+	 * @return the number of requests currently in transit between two regions
+	 */
+	public long getTrafficLevel(int r1, int r2){
+		return trafficLevels.get(pathIndex(r1, r2));
 	}
 
 //	private void printMatrix(double[][] matrix){
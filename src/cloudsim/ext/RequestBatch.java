@@ -0,0 +1,137 @@
+package cloudsim.ext;
+
+import cloudsim.ext.datacenter.DatacenterController;
+import cloudsim.ext.util.CommPath;
+
+/**
+ * The request groups sent by a {@link UserBase} at one time, carried as a single message instead of
+ * one {@link InternetCloudlet} per group. Group <code>i</code> has the id <code>firstId + i</code> and
+ * <code>groupSize</code> requests, except the last group which may be smaller.
+ *
+ * The groups are only turned into cloudlets by the {@link DatacenterController} that processes them.
+ * Each group still gets its own response, so response times are recorded per group as before.
+ */
+public class RequestBatch {
+	private final GeoLocatable originator;
+	private final int appId;
+	private final int firstId;
+	private final int groupCount;
+	private final int groupSize;
+	private final int lastGroupSize;
+	private final double lengthPerRequest;
+	private final long dataSizePerRequest;
+	private final long outputSizePerRequest;
+	private CommPath commPath;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param firstId id of the first group
+	 * @param groupCount number of groups
+	 * @param groupSize number of requests in each group
+	 * @param lastGroupSize number of requests in the last group
+	 * @param lengthPerRequest instruction length of one request
+	 * @param dataSizePerRequest
+	 * @param outputSizePerRequest
+	 * @param originator
+	 * @param appId
+	 */
+	public RequestBatch(int firstId,
+						int groupCount,
+						int groupSize,
+						int lastGroupSize,
+						double lengthPerRequest,
+						long dataSizePerRequest,
+						long outputSizePerRequest,
+						GeoLocatable originator,
+						int appId){
+		this.firstId = firstId;
+		this.groupCount = groupCount;
+		this.groupSize = groupSize;
+		this.lastGroupSize = lastGroupSize;
+		this.lengthPerRequest = lengthPerRequest;
+		this.dataSizePerRequest = dataSizePerRequest;
+		this.outputSizePerRequest = outputSizePerRequest;
+		this.originator = originator;
+		this.appId = appId;
+	}
+
+	/**
+	 * @param from index of the first group, inclusive
+	 * @param to index of the last group, exclusive
+	 * @return a batch of the groups in the range, or this batch if the range covers all groups
+	 */
+	public RequestBatch subBatch(int from, int to){
+		if (from == 0 && to == groupCount){
+			return this;
+		}
+
+		return new RequestBatch(firstId + from, to - from, groupSize, getRequestCount(to - 1),
+								lengthPerRequest, dataSizePerRequest, outputSizePerRequest, originator, appId);
+	}
+
+	/**
+	 * @param group index of the group in this batch
+	 * @return the id of the group
+	 */
+	public int getGroupId(int group){
+		return firstId + group;
+	}
+
+	/**
+	 * @param group index of the group in this batch
+	 * @return the number of requests in the group
+	 */
+	public int getRequestCount(int group){
+		return (group == groupCount - 1) ? lastGroupSize : groupSize;
+	}
+
+	/**
+	 * @return the number of requests in all groups
+	 */
+	public int getRequestCount(){
+		return groupSize * (groupCount - 1) + lastGroupSize;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	public int getGroupCount(){
+		return groupCount;
+	}
+
+	public GeoLocatable getOriginator() {
+		return originator;
+	}
+
+	public int getAppId() {
+		return appId;
+	}
+
+	public double getLengthPerRequest() {
+		return lengthPerRequest;
+	}
+
+	public long getDataSizePerRequest() {
+		return dataSizePerRequest;
+	}
+
+	public long getOutputSizePerRequest() {
+		return outputSizePerRequest;
+	}
+
+	/**
+	 * @return the path the batch travelled on, set by the {@link Internet}
+	 */
+	public CommPath getCommPath() {
+		return commPath;
+	}
+
+	public void setCommPath(CommPath commPath) {
+		this.commPath = commPath;
+	}
+
+	public String toString(){
+		return "groups " + firstId + "-" + (firstId + groupCount - 1) + ", requests=" + getRequestCount();
+	}
+}
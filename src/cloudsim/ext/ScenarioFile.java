@@ -0,0 +1,258 @@
+package cloudsim.ext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cloudsim.ext.gui.DataCenterUIElement;
+import cloudsim.ext.gui.MachineUIElement;
+import cloudsim.ext.gui.UserBaseUIElement;
+import cloudsim.ext.gui.VmAllocationUIElement;
+
+/**
+ * Reads and writes scenarios in a compact text format, one element per line, so large scenarios
+ * can be read in a single pass without reflection. For example:
+ * <pre>
+ * # Settings, before the first section
+ * duration = 5 min
+ * user.grouping = 10
+ * dc.grouping = 10
+ * instruction.length = 100
+ * broker = Closest Data Center
+ *
+ * [datacenters]
+ * # name, region, arch, os, vmm, cost per VM hr, cost per memory, cost per storage, cost per bw[, vms, vm image size, vm memory, vm bw]
+ * DC1, 0, x86, Linux, Xen, 0.1, 0.05, 0.1, 0.1, 20, 10000, 512, 1000
+ *
+ * [machines]
+ * # data center, memory, storage, bw, processors, speed, vm policy[, copies]
+ * DC1, 204800, 100000000, 1000000, 5, 5000, TIME_SHARED
+ *
+ * [userbases]
+ * # name, region, requests per user per hr, request size, peak start, peak end, peak users, off-peak users
+ * UB1, 0, 120, 10000, 3, 9, 3000, 150
+ * </pre>
+ * Blank lines and lines starting with <code>#</code> are ignored. Durations take the units sec,
+ * min, hours or days. Settings that are left out keep the values already in the {@link Simulation}.
+ */
+public class ScenarioFile {
+
+	private static final String SECTION_DATACENTERS = "[datacenters]";
+	private static final String SECTION_MACHINES = "[machines]";
+	private static final String SECTION_USERBASES = "[userbases]";
+
+	private static final String KEY_DURATION = "duration";
+	private static final String KEY_USER_GROUPING = "user.grouping";
+	private static final String KEY_DC_GROUPING = "dc.grouping";
+	private static final String KEY_INSTRUCTION_LENGTH = "instruction.length";
+	private static final String KEY_BROKER = "broker";
+
+	/**
+	 * Reads a scenario file into a simulation, replacing its data centers and user bases.
+	 *
+	 * @param file
+	 * @param sim
+	 * @throws IOException if the file cannot be read or is not a valid scenario
+	 */
+	public static void read(File file, Simulation sim) throws IOException {
+		FileReader in = new FileReader(file);
+		try {
+			read(in, sim);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a scenario into a simulation, replacing its data centers and user bases.
+	 *
+	 * @param reader
+	 * @param sim
+	 * @throws IOException if the input cannot be read or is not a valid scenario
+	 */
+	public static void read(Reader reader, Simulation sim) throws IOException {
+		BufferedReader in = new BufferedReader(reader);
+		List<DataCenterUIElement> dataCenters = new ArrayList<DataCenterUIElement>();
+		Map<String, DataCenterUIElement> dataCentersByName = new HashMap<String, DataCenterUIElement>();
+		List<UserBaseUIElement> userBases = new ArrayList<UserBaseUIElement>();
+
+		String section = null;
+		String line;
+		int lineNo = 0;
+		while ((line = in.readLine()) != null){
+			lineNo++;
+			line = line.trim();
+			if (line.length() == 0 || line.charAt(0) == '#'){
+				continue;
+			}
+
+			try {
+				if (line.charAt(0) == '['){
+					section = line.toLowerCase();
+					if (!section.equals(SECTION_DATACENTERS) && !section.equals(SECTION_MACHINES)
+							&& !section.equals(SECTION_USERBASES)){
+						throw new IllegalArgumentException("unknown section " + line);
+					}
+				} else if (section == null){
+					readSetting(line, sim);
+				} else if (section.equals(SECTION_DATACENTERS)){
+					DataCenterUIElement dc = readDataCenter(split(line));
+					dataCenters.add(dc);
+					dataCentersByName.put(dc.getName(), dc);
+				} else if (section.equals(SECTION_MACHINES)){
+					readMachines(split(line), dataCentersByName);
+				} else {
+					userBases.add(readUserBase(split(line)));
+				}
+			} catch (IllegalArgumentException e){
+				//Also covers NumberFormatException
+				throw new IOException("Invalid scenario at line " + lineNo + ": " + e.getMessage());
+			} catch (IndexOutOfBoundsException e){
+				throw new IOException("Invalid scenario at line " + lineNo + ": missing values");
+			}
+		}
+
+		sim.getDataCenters().replaceContent(dataCenters);
+		sim.getUserBases().replaceContent(userBases);
+	}
+
+	private static void readSetting(String line, Simulation sim){
+		int eq = line.indexOf('=');
+		if (eq <= 0){
+			throw new IllegalArgumentException("expected key = value");
+		}
+		String key = line.substring(0, eq).trim();
+		String value = line.substring(eq + 1).trim();
+
+		if (key.equals(KEY_DURATION)){
+			sim.setSimulationTime(parseDuration(value));
+		} else if (key.equals(KEY_USER_GROUPING)){
+			sim.setUserGroupingFactor(Integer.parseInt(value));
+		} else if (key.equals(KEY_DC_GROUPING)){
+			sim.setDcRequestGroupingFactor(Integer.parseInt(value));
+		} else if (key.equals(KEY_INSTRUCTION_LENGTH)){
+			sim.setInstructionLengthPerRequest(Integer.parseInt(value));
+		} else if (key.equals(KEY_BROKER)){
+			sim.setServiceBrokerPolicy(value);
+		} else {
+			throw new IllegalArgumentException("unknown setting " + key);
+		}
+	}
+
+	/**
+	 * @param value a number followed by sec, min, hours or days
+	 * @return the duration in milliseconds
+	 */
+	private static double parseDuration(String value){
+		String[] parts = value.split("\\s+");
+		double amount = Double.parseDouble(parts[0]);
+		String unit = (parts.length > 1) ? parts[1] : "min";
+		if (unit.equals("sec")){
+			return amount * 1000;
+		} else if (unit.equals("min")){
+			return amount * Constants.MILLI_SECONDS_TO_MINS;
+		} else if (unit.equals("hours")){
+			return amount * Constants.MILLI_SECONDS_TO_HOURS;
+		} else if (unit.equals("days")){
+			return amount * Constants.MILLI_SECONDS_TO_DAYS;
+		}
+		throw new IllegalArgumentException("unknown time unit " + unit);
+	}
+
+	private static DataCenterUIElement readDataCenter(String[] v){
+		DataCenterUIElement dc = new DataCenterUIElement(v[0], Integer.parseInt(v[1]), v[2], v[3], v[4],
+														 Double.parseDouble(v[5]), Double.parseDouble(v[6]),
+														 Double.parseDouble(v[7]), Double.parseDouble(v[8]));
+		if (v.length > 9){
+			dc.setVmAllocation(new VmAllocationUIElement(dc, Integer.parseInt(v[9]), Long.parseLong(v[10]),
+														 Integer.parseInt(v[11]), Long.parseLong(v[12])));
+		}
+		return dc;
+	}
+
+	private static void readMachines(String[] v, Map<String, DataCenterUIElement> dataCentersByName){
+		DataCenterUIElement dc = dataCentersByName.get(v[0]);
+		if (dc == null){
+			throw new IllegalArgumentException("unknown data center " + v[0]);
+		}
+
+		int copies = (v.length > 7) ? Integer.parseInt(v[7]) : 1;
+		MachineUIElement.VmAllocationPolicy policy = MachineUIElement.VmAllocationPolicy.valueOf(v[6]);
+		for (int i = 0; i < copies; i++){
+			dc.getMachineList().add(new MachineUIElement(Integer.parseInt(v[1]), Long.parseLong(v[2]),
+														 Integer.parseInt(v[3]), Integer.parseInt(v[4]),
+														 Integer.parseInt(v[5]), policy));
+		}
+	}
+
+	private static UserBaseUIElement readUserBase(String[] v){
+		return new UserBaseUIElement(v[0], Integer.parseInt(v[1]), Integer.parseInt(v[2]), Long.parseLong(v[3]),
+									 new int[]{Integer.parseInt(v[4]), Integer.parseInt(v[5])},
+									 Integer.parseInt(v[6]), Integer.parseInt(v[7]));
+	}
+
+	/** Splits a line on commas and trims the values */
+	private static String[] split(String line){
+		String[] values = line.split(",");
+		for (int i = 0; i < values.length; i++){
+			values[i] = values[i].trim();
+		}
+		return values;
+	}
+
+	/**
+	 * Writes the configuration of a simulation as a scenario file.
+	 *
+	 * @param sim
+	 * @param writer
+	 */
+	public static void write(Simulation sim, Writer writer){
+		PrintWriter out = new PrintWriter(writer);
+
+		out.println(KEY_DURATION + " = " + (sim.getSimulationTime() / 1000) + " sec");
+		out.println(KEY_USER_GROUPING + " = " + sim.getUserGroupingFactor());
+		out.println(KEY_DC_GROUPING + " = " + sim.getDcRequestGroupingFactor());
+		out.println(KEY_INSTRUCTION_LENGTH + " = " + sim.getInstructionLengthPerRequest());
+		out.println(KEY_BROKER + " = " + sim.getServiceBrokerPolicy());
+
+		out.println();
+		out.println(SECTION_DATACENTERS);
+		for (DataCenterUIElement dc : sim.getDataCenters()){
+			out.print(dc.getName() + ", " + dc.getRegion() + ", " + dc.getArchitecture() + ", " + dc.getOs() + ", "
+					  + dc.getVmm() + ", " + dc.getCostPerProcessor() + ", " + dc.getCostPerMem() + ", "
+					  + dc.getCostPerStorage() + ", " + dc.getCostPerBw());
+			VmAllocationUIElement vms = dc.getVmAllocation();
+			if (vms != null){
+				out.print(", " + vms.getVmCount() + ", " + vms.getImageSize() + ", " + vms.getMemory() + ", " + vms.getBw());
+			}
+			out.println();
+		}
+
+		out.println();
+		out.println(SECTION_MACHINES);
+		for (DataCenterUIElement dc : sim.getDataCenters()){
+			for (MachineUIElement m : dc.getMachineList()){
+				out.println(dc.getName() + ", " + m.getMemory() + ", " + m.getStorage() + ", " + m.getBw() + ", "
+							+ m.getProcessors() + ", " + m.getSpeed() + ", " + m.getVmAllocationPolicy());
+			}
+		}
+
+		out.println();
+		out.println(SECTION_USERBASES);
+		for (UserBaseUIElement ub : sim.getUserBases()){
+			out.println(ub.getName() + ", " + ub.getRegion() + ", " + ub.getReqPerHrPerUser() + ", " + ub.getReqSize() + ", "
+						+ ub.getPeakHoursStart() + ", " + ub.getPeakHoursEnd() + ", " + ub.getPeakUserCount() + ", "
+						+ ub.getOffPeakUserCount());
+		}
+
+		out.flush();
+	}
+}
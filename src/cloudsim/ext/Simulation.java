@@ -24,6 +24,7 @@ import cloudsim.CloudletList;
 import cloudsim.DataCenter;
 import cloudsim.DatacenterCharacteristics;
 import cloudsim.Host;
+import cloudsim.ProcessorSharingVMScheduler;
 import cloudsim.SimpleBWProvisioner;
 import cloudsim.SimpleMemoryProvisioner;
 import cloudsim.SimpleVMProvisioner;
@@ -33,9 +34,11 @@ import cloudsim.TimeSharedVMScheduler;
 import cloudsim.TimeSharedWithPriorityAllocationPolicy;
 import cloudsim.TimeSpaceSharedAllocationPolicy;
 import cloudsim.VMCharacteristics;
+import cloudsim.VMScheduler;
 import cloudsim.VMMAllocationPolicy;
 import cloudsim.VirtualMachine;
 import cloudsim.VirtualMachineList;
+import cloudsim.ext.datacenter.CloudletQueue;
 import cloudsim.ext.datacenter.DatacenterController;
 import cloudsim.ext.event.BaseCloudSimObservable;
 import cloudsim.ext.event.CloudSimEvent;
@@ -73,12 +76,17 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 	private double simulationTime;
 	private String serviceBrokerPolicy = Constants.BROKER_POLICY_PROXIMITY;
 	private String loadBalancePolicy = Constants.LOAD_BALANCE_ANT_COLONY;
+	private Map<String, String> loadBalancerProperties = new HashMap<String, String>();
+	/** Seed of the random streams of a run, or null for simjava's default seed sequence */
+	private Long seed;
 	private int userGroupingFactor = 10;
 	private int dcRequestGroupingFactor = 10;
 	private int instructionLengthPerRequest = 100;
 	private CloudSimEventListener progressListener;
 	private Map<String, Object> results;
 	private Internet internet;
+	/** The network model of the current, or last, run */
+	private InternetCharacteristics internetCharacteristics;
 	
 	/** Constructor. */
 	public Simulation(CloudSimEventListener gui) throws Exception {
@@ -159,11 +167,18 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		String[] exclude_from_processing = { "" };
 		String report_name = null;
 
+		if (seed != null){
+			//Every simjava distribution created without a seed takes the next one from this sequence
+			Sim_system.set_seed(getWorkloadSeed(seed));
+		}
+
 		//Initialize GridSim
 		System.out.println("Initializing GridSim...");
 		GridSim.init(num_user, calendar, trace_flag, exclude_from_file,
 				exclude_from_processing, report_name);
 		
+		prepareInternetCharacteristics();
+		
 		// Create Datacenters and Controllers
 		dcbs  = new ArrayList<DatacenterController>();
 		dcs =  new ArrayList<DataCenter>();
@@ -177,6 +192,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 														       d.getCostPerProcessor(), 
 														       d.getCostPerBw());
 				if (controller != null) {
+					controller.setDataCenter(dc);
 					dcbs.add(controller);
 					dcs.add(dc);
 					
@@ -200,20 +216,21 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 											 ub.getOffPeakUserCount(),
 											 ub.getReqSize(),
 											 userGroupingFactor,
-											 instructionLengthPerRequest);
+											 instructionLengthPerRequest,
+											 internetCharacteristics);
 			ubs.add(userBase);
 		}
 
 		//The Internet
-		internet = new Internet(progressListener);
+		internet = new Internet(progressListener, internetCharacteristics);
 		
 		CloudAppServiceBroker serviceBroker;
 		if (serviceBrokerPolicy.equals(Constants.BROKER_POLICY_PROXIMITY)){
-			serviceBroker = new ServiceProximityServiceBroker();
+			serviceBroker = new ServiceProximityServiceBroker(internetCharacteristics);
 		} else if (serviceBrokerPolicy.equals(Constants.BROKER_POLICY_DYNAMIC)){
-			serviceBroker = new DynamicServiceBroker(dcbs);
+			serviceBroker = new DynamicServiceBroker(dcbs, internetCharacteristics);
 		} else {
-			serviceBroker = new BestResponseTimeServiceBroker();
+			serviceBroker = new BestResponseTimeServiceBroker(internetCharacteristics);
 		}
 		internet.addServiceBroker(DEFAULT_APP_ID, serviceBroker); 				
 		
@@ -234,6 +251,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		Map<String, HourlyEventCounter> dcArrivalStats = new HashMap<String, HourlyEventCounter>();
 		Map<String, HourlyEventCounter> dcLoadingStats = new HashMap<String, HourlyEventCounter>();
 		Map<String, SimMeasure> dcProcTimes = new TreeMap<String, SimMeasure>();
+		Map<String, CloudletQueue> dcQueues = new TreeMap<String, CloudletQueue>();
 		Map<String, Map<String, Double>> costs = new HashMap<String, Map<String,Double>>();
 		HourlyEventCounter hrlyArrivalStat = null;
 		double vmCost, dataCost, totalCost;
@@ -253,6 +271,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 			dcCosts.put(Constants.TOTAL_COST, totalCost);
 			
 			costs.put(dcName, dcCosts);
+			dcQueues.put(dcName, dcb.getWaitingQueue());
 			
 			Sim_stat stat = dcb.get_stat();
 			List res = stat.get_measures();
@@ -267,7 +286,11 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 				m.setAvg(stat.average(measure));
 				m.setMin(stat.minimum(measure));
 				m.setMax(stat.maximum(measure));
-				m.setCount(dcb.getAllRequestsProcessed());
+				if (measure.equals(Constants.DC_QUEUE_WAITING_TIME)){
+					m.setCount((int) dcb.getWaitingQueue().getDequeuedCount());
+				} else {
+					m.setCount(dcb.getAllRequestsProcessed());
+				}
 
 				dcProcTimes.put(dcName + "||" + measure, m);
 			}
@@ -285,6 +308,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		results.put(Constants.DC_PROCESSING_TIME_STATS, dcProcTimes);
 		results.put(Constants.DC_ARRIVAL_STATS, dcArrivalStats);
 		results.put(Constants.DC_OVER_LOADING_STATS, dcLoadingStats);
+		results.put(Constants.DC_QUEUE_STATS, dcQueues);
 		results.put(Constants.COSTS, costs);
 		
 		for (DataCenter dc : dcs){
@@ -314,6 +338,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 			}
 		}
 		results.put(Constants.UB_STATS, ubResults);
+		results.put(Constants.LINK_UTILISATION_STATS, internet.getLinkUtilisation());
 		
 		//Finish off simulation
 		System.out.println("Simulation finished at " + GridSim.clock());
@@ -329,6 +354,19 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		} 
 	}
 
+	/**
+	 * Creates the scheduler of a VM. Cloudlets are time-shared, by default with a
+	 * {@link TimeSharedVMScheduler}. The system property <code>cloudsim.ext.vm.scheduler=ps</code>
+	 * selects the equivalent {@link ProcessorSharingVMScheduler}, whose updates do not depend
+	 * on the number of cloudlets running.
+	 */
+	private VMScheduler createVMScheduler(){
+		if ("ps".equalsIgnoreCase(System.getProperty("cloudsim.ext.vm.scheduler"))){
+			return new ProcessorSharingVMScheduler();
+		}
+		return new TimeSharedVMScheduler();
+	}
+
 	@SuppressWarnings("unchecked")
 	private VirtualMachineList createVM(int userID, int vms) {
 
@@ -350,7 +388,7 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		for (int i = 0; i < vms; i++) {
 			vm[i] = new VirtualMachine(new VMCharacteristics(i, userID, size,
 					memory, bw, vcpus, priority, vmm,
-					new TimeSharedVMScheduler()));
+					createVMScheduler()));
 			//for creating a VM with a space shared scheduling policy for cloudlets:
 			//vm[i] = new VirtualMachine(new VMCharacteristics(i,userID,size,memory,bw,vcpus,vmm,new SpaceSharedVMScheduler()));
 
@@ -419,6 +457,34 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 		return datacenter;
 	}
 
+	/**
+	 * Creates the network model of this run from the latency and bandwidth matrices of the shared
+	 * {@link InternetCharacteristics} instance, so nothing is left over from a previous run.
+	 */
+	private void prepareInternetCharacteristics(){
+		InternetCharacteristics configured = InternetCharacteristics.getInstance();
+		if (seed != null){
+			internetCharacteristics = new InternetCharacteristics(configured, seed);
+		} else {
+			internetCharacteristics = new InternetCharacteristics(configured);
+		}
+	}
+	
+	/**
+	 * Maps a run seed onto the range accepted by the simjava generators, 1 to 2^31 - 2. 
+	 */
+	private static long getWorkloadSeed(long seed){
+		long range = Integer.MAX_VALUE - 1;
+		return 1 + (((seed % range) + range) % range);
+	}
+	
+	/**
+	 * @return the network model of the current, or last, run
+	 */
+	public InternetCharacteristics getInternetCharacteristics(){
+		return internetCharacteristics;
+	}
+
 	//We strongly encourage users to develop their own broker policies, to submit vms and cloudlets according
 	//to the specific rules of the simulated scenario
 	private DatacenterController createBroker(String namePrefix, 
@@ -433,7 +499,9 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 												  costPerVmHour,
 												  costPerDataGB,
 												  dcRequestGroupingFactor,
-												  loadBalancePolicy);
+												  loadBalancePolicy,
+												  loadBalancerProperties,
+												  internetCharacteristics);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -592,6 +660,35 @@ public class Simulation extends BaseCloudSimObservable implements Constants {
 	public void setLoadBalancePolicy(String loadBalancePolicy) {
 		this.loadBalancePolicy = loadBalancePolicy;
 	}
+
+	/**
+	 * @return the properties passed to the load balancer factory of each data center
+	 */
+	public Map<String, String> getLoadBalancerProperties() {
+		return loadBalancerProperties;
+	}
+
+	/**
+	 * @param loadBalancerProperties the properties passed to the load balancer factory of each data center
+	 */
+	public void setLoadBalancerProperties(Map<String, String> loadBalancerProperties) {
+		this.loadBalancerProperties = loadBalancerProperties;
+	}
+
+	/**
+	 * @return the seed of the random streams of a run, or null if the default streams are used
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed seed of the random streams of a run: the requests of the user bases and the delays 
+	 * 			of the Internet. Null keeps simjava's default seed sequence.
+	 */
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
 	
 	
 	
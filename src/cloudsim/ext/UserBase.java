@@ -1,8 +1,6 @@
 package cloudsim.ext;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import cloudsim.CloudSim;
 import cloudsim.ext.stat.HourlyStat;
@@ -22,6 +20,10 @@ import gridsim.util.Poisson;
  * time is calculated using the parameters peakHours, peakAvgUsers and offPeakAvgUsers and also by
  * using a Poisson distribution to randomly vary the number in a realistic manner. 
  * 
+ * Each request group is normally sent as its own {@link InternetCloudlet}. In aggregated request mode
+ * (system property <code>cloudsim.ext.ub.aggregate=true</code>) all the groups of a burst travel as one
+ * {@link RequestBatch} instead, which is only split into cloudlets by the data center.
+ * 
  * The private inner class {@link ResponseHandler} is responsible for accepting responses to the 
  * requests sent by UserBase. Therefore the traffic generation pattern is independent of receiving the 
  * responses to the requests. 
@@ -36,6 +38,7 @@ public class UserBase extends CloudSim implements GeoLocatable {
 	private int instructionLengthPerRequest;
 	private int messagesReceived = 0;	
 	private int responsesReceived = 0;
+	private int requestsFailed = 0;
 	private boolean cancelled = false;
 	private int requestsPerUserPerHour;
 	private double[] peakHours;
@@ -44,12 +47,11 @@ public class UserBase extends CloudSim implements GeoLocatable {
 	private long perRequestDataSize;
 	private int userGroupingFactor;
 	private Sim_stat stat;
+	private InternetCharacteristics internetCharacteristics;
 	
-	/** 
-	 * Holds the id's of the requests that have been sent out, along with the request time, until
-	 * the responses are received by the {@link ResponseHandler}
-	 */
-	private Map<Integer, Double> currentRequests;
+	/** The send time of each request, for the {@link ResponseHandler} */
+	private SendTimes sendTimes = new SendTimes();
+	private boolean aggregateRequests = Boolean.getBoolean("cloudsim.ext.ub.aggregate");
 	
 	/** Records the resonse time statistics grouped by the hour of the day. */
 	private HourlyStat hourlyResponseTimeStat;
@@ -68,6 +70,25 @@ public class UserBase extends CloudSim implements GeoLocatable {
 					long reqDataSize,
 					int userGroupingFactor,
 					int instructionLengthPerRequest) throws Exception {
+		this(name, region, requestsPerUserPerHour, peakHours, peakAvgUsers, offPeakAvgUsers, reqDataSize,
+			 userGroupingFactor, instructionLengthPerRequest, InternetCharacteristics.getInstance());
+	}
+	
+	/** 
+	 * Constructor.
+	 * 
+	 * @param internetCharacteristics the network model of the simulation this user base belongs to
+	 */
+	public UserBase(String name, 
+					int region,
+					int requestsPerUserPerHour,
+					int[] peakHours,
+					int peakAvgUsers,
+					int offPeakAvgUsers,
+					long reqDataSize,
+					int userGroupingFactor,
+					int instructionLengthPerRequest,
+					InternetCharacteristics internetCharacteristics) throws Exception {
 		super(name);
 		
 		System.out.println(GridSim.clock() + " Creating new user base " + get_name());
@@ -79,15 +100,15 @@ public class UserBase extends CloudSim implements GeoLocatable {
 		this.offPeakAvgUsers = offPeakAvgUsers;
 		this.perRequestDataSize = reqDataSize;
 		this.userGroupingFactor = userGroupingFactor;
+		this.internetCharacteristics = internetCharacteristics;
 		
 		//Convert peak hrs to time in milliseconds from GMT
 		this.peakHours = new double[2];
 		this.peakHours[0] = peakHours[0] * Constants.MILLI_SECONDS_TO_HOURS;
 		this.peakHours[1] = peakHours[1] * Constants.MILLI_SECONDS_TO_HOURS;
 		
-		this.currentRequests = Collections.synchronizedMap(new HashMap<Integer, Double>());
 						
-		InternetCharacteristics.getInstance().addEntity(this);
+		internetCharacteristics.addEntity(this);
 		
 		stat = new Sim_stat();
 		stat.add_measure(Constants.UB_RESPONSE_TIME, Sim_stat.INTERVAL_BASED);
@@ -123,55 +144,73 @@ public class UserBase extends CloudSim implements GeoLocatable {
 			
 			userCountForRequest = getOnlineUsers(currTime);
 			requestGroups = getCurrUserCountInGroups(userCountForRequest);
+			remainingUsers = userCountForRequest - (userGroupingFactor * requestGroups);
+			if (userCountForRequest > 0){
+				sendTimes.add(get_id() * 100000 + id + 1, requestGroups + ((remainingUsers > 0) ? 1 : 0), currTime);
+			}
 			
-			for (int i = 0; i < requestGroups; i++){
-				cloudlet = new InternetCloudlet(get_id() * 100000 + ++id, //Id need not be unique, just used for debugging
-												 instructionLengthPerRequest, 
-												 perRequestDataSize, 
-												 output_size, 
-												 this, 
-												 Constants.DEFAULT_APP_ID,
-												 userGroupingFactor);
+			if (aggregateRequests){
+				int groups = requestGroups + ((remainingUsers > 0) ? 1 : 0);
+				if (groups > 0){
+					RequestBatch batch = new RequestBatch(get_id() * 100000 + id + 1,
+														  groups,
+														  userGroupingFactor,
+														  (remainingUsers > 0) ? remainingUsers : userGroupingFactor,
+														  instructionLengthPerRequest,
+														  perRequestDataSize,
+														  output_size,
+														  this,
+														  Constants.DEFAULT_APP_ID);
+					id += groups;
+					
+					send(Constants.INTERNET, 0.0, Constants.REQUEST_INTERNET_CLOUDLET_TAG, batch);
+					messagesSent += groups;
+					requestsSent += userCountForRequest;
+				}
+			} else {
+				for (int i = 0; i < requestGroups; i++){
+					cloudlet = new InternetCloudlet(get_id() * 100000 + ++id, //Ids of a burst are consecutive, see SendTimes
+													 instructionLengthPerRequest, 
+													 perRequestDataSize, 
+													 output_size, 
+													 this, 
+													 Constants.DEFAULT_APP_ID,
+													 userGroupingFactor);
 				
-				send(Constants.INTERNET, 0.0, Constants.REQUEST_INTERNET_CLOUDLET_TAG, cloudlet);
-				messagesSent++;
+					send(Constants.INTERNET, 0.0, Constants.REQUEST_INTERNET_CLOUDLET_TAG, cloudlet);
+					messagesSent++;
 			
-				requestsSent += userGroupingFactor;
-				
-				currentRequests.put(cloudlet.getCloudletId(), currTime);	
+					requestsSent += userGroupingFactor;
 				
-				//System.out.println(currTime + ": userbase " + get_name() + " sent message " 
-				//		+ cloudlet.getCloudletId() + " to internet with " + userGroupingFactor);
-			}
+					//System.out.println(currTime + ": userbase " + get_name() + " sent message " 
+					//		+ cloudlet.getCloudletId() + " to internet with " + userGroupingFactor);
+				}
 			
-			remainingUsers = userCountForRequest - (userGroupingFactor * requestGroups);
-			if (remainingUsers > 0){
-				cloudlet = new InternetCloudlet(get_id() * 100000 + ++id, //Id need not be unique, just used for debugging
-										 instructionLengthPerRequest, 
-										 perRequestDataSize, 
-										 output_size, 
-										 this, 
-										 Constants.DEFAULT_APP_ID,
-										 remainingUsers);
+				if (remainingUsers > 0){
+					cloudlet = new InternetCloudlet(get_id() * 100000 + ++id, //Ids of a burst are consecutive, see SendTimes
+											 instructionLengthPerRequest, 
+											 perRequestDataSize, 
+											 output_size, 
+											 this, 
+											 Constants.DEFAULT_APP_ID,
+											 remainingUsers);
 				
-				send(Constants.INTERNET, 0.0, Constants.REQUEST_INTERNET_CLOUDLET_TAG, cloudlet);
-				messagesSent++;
+					send(Constants.INTERNET, 0.0, Constants.REQUEST_INTERNET_CLOUDLET_TAG, cloudlet);
+					messagesSent++;
 				
-				requestsSent += remainingUsers;
+					requestsSent += remainingUsers;
 				
-				currentRequests.put(cloudlet.getCloudletId(), currTime);
-				
-				//System.out.println(currTime + ": userbase " + get_name() + " sent message " 
-				//				+ cloudlet.getCloudletId() + " to internet with " + remainingUsers);
-			}			
-
+					//System.out.println(currTime + ": userbase " + get_name() + " sent message " 
+					//				+ cloudlet.getCloudletId() + " to internet with " + remainingUsers);
+				}
+			}
 			
 			sim_pause(getInterRequestDelay());
 
 		}
 				
 		System.out.println(get_name() + " finalizing. Messages sent:" + messagesSent + ", Received:" + messagesReceived);
-		System.out.println(get_name() + " requests sent=" + requestsSent + " , received=" + responsesReceived);
+		System.out.println(get_name() + " requests sent=" + requestsSent + " , received=" + responsesReceived + " , failed=" + requestsFailed);
 	}
 
 	private long getInterRequestDelay(){
@@ -198,6 +237,14 @@ public class UserBase extends CloudSim implements GeoLocatable {
 		return region;
 	}
 	
+	/**
+	 * @param aggregateRequests true to send all the request groups of a burst as one {@link RequestBatch}.
+	 * 		Defaults to the system property <code>cloudsim.ext.ub.aggregate</code>.
+	 */
+	public void setAggregateRequests(boolean aggregateRequests){
+		this.aggregateRequests = aggregateRequests;
+	}
+	
 	public synchronized void cancelRun(){
 		cancelled = true;
 	}
@@ -210,6 +257,13 @@ public class UserBase extends CloudSim implements GeoLocatable {
 		return responsesReceived;
 	}
 	
+	/**
+	 * @return the number of requests the data centers dropped instead of processing
+	 */
+	public int getRequestsFailed() {
+		return requestsFailed;
+	}
+	
 
 	
 	/** 
@@ -232,18 +286,18 @@ public class UserBase extends CloudSim implements GeoLocatable {
 					int requestCount = cl.getRequestCount();
 					
 					//Reflect completion of request transmission in traffic levels
-					InternetCharacteristics.getInstance().removeTraffic((CommPath) cl.getData(Constants.PARAM_COMM_PATH), 
-																		 requestCount);
+					internetCharacteristics.removeTraffic((CommPath) cl.getData(Constants.PARAM_COMM_PATH), 
+														  requestCount);
 					
 					messagesReceived++;
+					double startTime = sendTimes.remove(cl.getCloudletId());
+					if (cl.getData(Constants.PARAM_FAILED) != null){
+						requestsFailed += requestCount;
+						continue;
+					}
 					responsesReceived += requestCount;
-					
-					//Reflect completion of request transmission in traffic levels
-					InternetCharacteristics.getInstance().removeTraffic((CommPath) cl.getData(Constants.PARAM_COMM_PATH), 
-																		 requestCount);
 								
-					Double startTime = currentRequests.remove(cl.getCloudletId());
-					if (startTime != null){
+					if (startTime >= 0){
 						double endTime = Sim_system.sim_clock();
 						
 						stat.update(Constants.UB_RESPONSE_TIME, startTime, endTime);
@@ -261,6 +315,66 @@ public class UserBase extends CloudSim implements GeoLocatable {
 		}
 		
 	}
-
-
+	
+	/**
+	 * Send times of the requests. The ids sent at one time are consecutive, so only the first id of
+	 * each burst is stored along with its time and the number of requests not yet answered. Bursts
+	 * are dropped from the front once all their requests are answered.
+	 */
+	private static class SendTimes {
+		private int[] firstIds = new int[64];
+		private double[] times = new double[64];
+		private int[] outstanding = new int[64];
+		/** Position of the oldest burst with outstanding requests */
+		private int start;
+		private int count;
+		
+		synchronized void add(int firstId, int requests, double time){
+			if (count == firstIds.length){
+				if (start >= count / 2){
+					compact();
+				} else {
+					firstIds = Arrays.copyOf(firstIds, count * 2);
+					times = Arrays.copyOf(times, count * 2);
+					outstanding = Arrays.copyOf(outstanding, count * 2);
+				}
+			}
+			firstIds[count] = firstId;
+			times[count] = time;
+			outstanding[count] = requests;
+			count++;
+		}
+		
+		/**
+		 * Looks up the send time of an answered request and forgets the request.
+		 * 
+		 * @param id
+		 * @return the send time of the request, or -1 if it was not sent
+		 */
+		synchronized double remove(int id){
+			int pos = Arrays.binarySearch(firstIds, start, count, id);
+			if (pos < 0){
+				//The burst starting before the id
+				pos = -pos - 2;
+			}
+			if (pos < start || outstanding[pos] == 0){
+				return -1;
+			}
+			
+			outstanding[pos]--;
+			while (start < count && outstanding[start] == 0){
+				start++;
+			}
+			return times[pos];
+		}
+		
+		private void compact(){
+			int live = count - start;
+			System.arraycopy(firstIds, start, firstIds, 0, live);
+			System.arraycopy(times, start, times, 0, live);
+			System.arraycopy(outstanding, start, outstanding, 0, live);
+			start = 0;
+			count = live;
+		}
+	}
 }
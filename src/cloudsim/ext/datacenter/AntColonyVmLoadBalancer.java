@@ -1,112 +1,155 @@
 package cloudsim.ext.datacenter;
 
-import java.util.Random;
+import java.util.Arrays;
 import cloudsim.VirtualMachine;
 
+/**
+ * Ant Colony Optimisation load balancer.
+ *
+ * Each VM is scored as <code>(pheromone * alpha * 2) + (capacity * beta * 3) - (allocations * 0.5)</code>,
+ * where pheromone is the total pheromone on all trails leading to the VM, and the highest scoring VM
+ * is selected. The pheromone totals are kept incrementally by a {@link PheromoneMatrix} and the scores
+ * in a {@link VmLoadIndex}, so only the selected VM is re-scored on each request.
+ * 
+ * Ants pick VMs with probability proportional to their pheromone, using a {@link WeightedSampler}
+ * kept in step with the pheromone totals and the balancer's seedable random number generator.
+ */
 public class AntColonyVmLoadBalancer extends VmLoadBalancer {
-	
-	private double[][] pheromones;
+
+	private PheromoneMatrix pheromones;
 	static final double alpha = 1.0;
 	static final double beta = 2.0;
 	static final double ONE_UNIT_PHEROMONE = 1.0;
 	static final double EVAPORATION_FACTOR = 0.5; // Changed from 2 to 0.5 (multiply, not divide)
+	static final double MIN_PHEROMONE = 0.01;
 	private final int NUM_ANTS = 5; // Reduced from 10 for performance
 
 	Ant[] ants;
 	DatacenterController dcbLocal;
-	int counter = 0;
+	private PheromoneMatrix.Mode matrixMode;
+	private double[] vmCapacities;
+	/** Holds the negated score of each VM, so the minimum is the best VM */
+	private VmLoadIndex scoreIndex;
+	/** Holds the ant selection weight of each VM */
+	private WeightedSampler trailSampler;
 
 	public AntColonyVmLoadBalancer(DatacenterController dcb) {
 		super();
 		dcbLocal = dcb;
+		matrixMode = PheromoneMatrix.parseMode(System.getProperty("cloudsim.ext.aco.matrix"), PheromoneMatrix.Mode.AUTO);
+		vmCapacities = new double[0];
+		scoreIndex = new VmLoadIndex();
+		trailSampler = new WeightedSampler();
 	}
 
 	@Override
 	public int getNextAvailableVm() {
-		if(counter == 0) {
-			pheromones = new double[dcbLocal.vmlist.size()][dcbLocal.vmlist.size()];
-			// Initialize pheromones based on VM capacity (higher capacity = more initial pheromone)
-			for (int i = 0; i < pheromones.length; i++) {
-				for (int j = 0; j < pheromones.length; j++) {
-					double vmCapacity = getVmCapacity(j);
-					pheromones[i][j] = vmCapacity / 1000.0; // Initialize based on capacity
-				}
-			}
-			counter++;
+		syncVmCount();
+
+		// Find VM with best score (pheromone + capacity - load)
+		int bestVm = scoreIndex.peekMin();
+		if (bestVm == -1) {
+			allocatedVm(0);
+			return 0;
+		}
+
+		// Strongly reinforce pheromones for selected VM (faster learning)
+		pheromones.reinforceColumn(bestVm, 1.0 - EVAPORATION_FACTOR, ONE_UNIT_PHEROMONE * 5.0);
+
+		allocatedVm(bestVm);
+		updateScore(bestVm);
+		return bestVm;
+	}
+
+	/**
+	 * Initialises the pheromone matrix on first use and grows it along with the controller's
+	 * VM list. New VMs start with pheromone based on their capacity.
+	 */
+	private void syncVmCount() {
+		int vmCount = dcbLocal.vmlist.size();
+		if (pheromones != null && vmCount <= pheromones.size()) {
+			return;
+		}
+
+		if (pheromones == null) {
+			pheromones = PheromoneMatrix.create(matrixMode, vmCount);
 			ants = new Ant[NUM_ANTS];
 			for (int i = 0; i < ants.length; i++) {
-				ants[i] = new Ant(pheromones);
+				ants[i] = new Ant();
 			}
 		}
-		
-		// Find VM with best score (pheromone + capacity - load)
-		int bestVm = 0;
-		double bestScore = Double.NEGATIVE_INFINITY;
-		
-		for (int vmId = 0; vmId < dcbLocal.vmlist.size(); vmId++) {
-			Integer allocationCount = vmAllocationCounts.get(vmId);
-			if (allocationCount == null) {
-				allocationCount = 0;
-			}
-			
-			// Calculate pheromone strength for this VM
-			double pheromoneScore = 0.0;
-			for (int j = 0; j < pheromones.length; j++) {
-				pheromoneScore += pheromones[j][vmId];
-			}
-			
-			double vmCapacity = getVmCapacity(vmId);
-			double loadPenalty = allocationCount * 0.5; // Penalize heavily loaded VMs
-			
-			// ACO score: high pheromone + high capacity - load penalty
-			double score = (pheromoneScore * alpha * 2.0) + (vmCapacity * beta * 3.0) - loadPenalty;
-			
-			if (score > bestScore) {
-				bestScore = score;
-				bestVm = vmId;
-			}
+
+		int oldCount = pheromones.size();
+		vmCapacities = Arrays.copyOf(vmCapacities, vmCount);
+		double[] initialPheromones = new double[vmCount];
+		for (int vmId = oldCount; vmId < vmCount; vmId++) {
+			vmCapacities[vmId] = getVmCapacity(vmId);
+			// Initialize based on capacity (higher capacity = more initial pheromone)
+			initialPheromones[vmId] = vmCapacities[vmId] / 1000.0;
 		}
-		
-		// Strongly reinforce pheromones for selected VM (faster learning)
-		for (int i = 0; i < pheromones.length; i++) {
-			pheromones[i][bestVm] = pheromones[i][bestVm] * (1.0 - EVAPORATION_FACTOR) + (ONE_UNIT_PHEROMONE * 5.0);
+		pheromones.grow(vmCount, initialPheromones);
+		vmAllocationCounts.ensureCapacity(vmCount);
+
+		scoreIndex.ensureSize(vmCount);
+		trailSampler.ensureSize(vmCount);
+		for (int vmId = 0; vmId < vmCount; vmId++) {
+			updateScore(vmId);
 		}
-		
-		allocatedVm(bestVm);
-		return bestVm;
+	}
+
+	private void updateScore(int vmId) {
+		// ACO score: high pheromone + high capacity - load penalty
+		double pheromoneScore = pheromones.columnTotal(vmId);
+		trailSampler.set(vmId, Math.pow(pheromoneScore, alpha));
+		double loadPenalty = vmAllocationCounts.getAllocations(vmId) * 0.5; // Penalize heavily loaded VMs
+		double score = (pheromoneScore * alpha * 2.0) + (vmCapacities[vmId] * beta * 3.0) - loadPenalty;
+
+		scoreIndex.setKey(vmId, -score);
 	}
 
 	private double getVmCapacity(int vmId) {
 		if (vmId < 0 || vmId >= dcbLocal.vmlist.size()) {
 			return 1.0;
 		}
-		
+
 		VirtualMachine vm = (VirtualMachine) dcbLocal.vmlist.get(vmId);
-		int cpus = vm.getCpus();
 		long bw = vm.getBw();
-		
-		// Estimate capacity based on CPUs and bandwidth
-		return cpus * 1000.0 + (bw / 1000.0);
+
+		// Capacity based on the effective MIPS share and bandwidth
+		return dcbLocal.getCapacityOracle().getMips(vmId) + (bw / 1000.0);
 	}
 
-	public void Evaporation() {
-		for (int i = 0; i < pheromones.length; i++) {
-			for (int j = 0; j < pheromones.length; j++) {
-				pheromones[i][j] *= EVAPORATION_FACTOR;
-				// Ensure minimum pheromone level
-				if (pheromones[i][j] < 0.01) {
-					pheromones[i][j] = 0.01;
-				}
-			}
+	@Override
+	public void vmCapacityChanged(int vmId) {
+		if (pheromones != null && vmId < pheromones.size()) {
+			vmCapacities[vmId] = getVmCapacity(vmId);
+			updateScore(vmId);
 		}
 	}
 
-	public class Ant {
-		private int fakeVmId;
+	/**
+	 * Selects how the pheromone matrix is stored. Only takes effect before the first allocation.
+	 * Defaults to the system property <code>cloudsim.ext.aco.matrix</code> (dense, lowrank or auto).
+	 *
+	 * @param matrixMode
+	 */
+	public void setMatrixMode(PheromoneMatrix.Mode matrixMode) {
+		this.matrixMode = matrixMode;
+	}
 
-		public Ant(double[][] ph) {
-			fakeVmId = ph.length - 1;
+	public void Evaporation() {
+		if (pheromones == null) {
+			return;
+		}
+
+		// Ensure minimum pheromone level
+		pheromones.evaporate(EVAPORATION_FACTOR, MIN_PHEROMONE);
+		for (int vmId = 0; vmId < pheromones.size(); vmId++) {
+			updateScore(vmId);
 		}
+	}
+
+	public class Ant {
 
 		public int SendAnt() {
 			return ProcessAnt(true);
@@ -119,53 +162,24 @@ public class AntColonyVmLoadBalancer extends VmLoadBalancer {
 		public int ProcessAnt(boolean updatePheromones) {
 			// Simplified: just select a random VM with pheromone bias
 			int vmId = selectVmByPheromone();
-			
-			if (updatePheromones && vmId >= 0 && vmId < pheromones.length) {
+
+			if (updatePheromones && vmId >= 0 && vmId < pheromones.size()) {
 				UpdatePheromone(0, vmId);
 			}
-			
+
 			return vmId;
 		}
 
 		private int selectVmByPheromone() {
-			double[] probability = new double[pheromones.length];
-			double sum = 0.0;
-			
-			for (int i = 0; i < probability.length; i++) {
-				double pheromoneSum = 0.0;
-				for (int j = 0; j < pheromones.length; j++) {
-					pheromoneSum += pheromones[j][i];
-				}
-				probability[i] = Math.pow(pheromoneSum, alpha);
-				sum += probability[i];
-			}
-			
-			// Normalize
-			if (sum > 0) {
-				for (int i = 0; i < probability.length; i++) {
-					probability[i] /= sum;
-				}
-			}
-			
-			// Select based on probability
-			Random rand = new Random();
-			double randomValue = rand.nextDouble();
-			double cumulative = 0.0;
-			
-			for (int i = 0; i < probability.length; i++) {
-				cumulative += probability[i];
-				if (randomValue <= cumulative) {
-					return i;
-				}
-			}
-			
-			return 0; // Fallback
+			// Select based on probability, proportional to pheromone ^ alpha
+			return trailSampler.sample(random.nextDouble());
 		}
 
 		public void UpdatePheromone(int prevId, int newId) {
-			if (prevId >= 0 && prevId < pheromones.length && 
-			    newId >= 0 && newId < pheromones.length) {
-				pheromones[prevId][newId] += ONE_UNIT_PHEROMONE;
+			if (prevId >= 0 && prevId < pheromones.size() &&
+			    newId >= 0 && newId < pheromones.size()) {
+				pheromones.deposit(prevId, newId, ONE_UNIT_PHEROMONE);
+				updateScore(newId);
 			}
 		}
 	}
@@ -0,0 +1,21 @@
+package cloudsim.ext.datacenter;
+
+import cloudsim.ext.InternetCloudlet;
+
+/**
+ * Optional contract for {@link VmLoadBalancer}s that can assign a whole batch of cloudlets 
+ * at once. When the load balancer of a {@link DatacenterController} implements this interface,
+ * the sub-cloudlets created for each incoming request are handed over together instead of 
+ * through one <code>getNextAvailableVm()</code> call each.
+ */
+public interface BatchVmScheduler {
+
+	/**
+	 * Assigns a batch of cloudlets to VMs.
+	 * 
+	 * @param cloudlets the batch, only the first <code>count</code> elements are used
+	 * @param count number of cloudlets in the batch
+	 * @param vmIds receives the id of the VM each cloudlet is assigned to, at the same index
+	 */
+	void scheduleBatch(InternetCloudlet[] cloudlets, int count, int[] vmIds);
+}
@@ -0,0 +1,332 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import cloudsim.ext.InternetCloudlet;
+import eduni.simjava.Sim_stat;
+
+/**
+ * Queue of cloudlets waiting for a VM in a {@link DatacenterController}, backed by array ring buffers.
+ * 
+ * The queue is unbounded unless a capacity is set. When a bounded queue is full the 
+ * {@link AdmissionPolicy} decides what happens to an arriving cloudlet:
+ * <ul>
+ * <li>{@link AdmissionPolicy#DROP} drops the arriving cloudlet.</li>
+ * <li>{@link AdmissionPolicy#SHED_OLDEST} drops the cloudlet that has waited longest and queues the new one.</li>
+ * <li>{@link AdmissionPolicy#PRIORITY} serves cloudlets by the priority of the user base they come from, 
+ * 		higher first and in arrival order within a priority. When full, the oldest cloudlet of the lowest 
+ * 		priority is dropped if it is below the priority of the arriving one, otherwise the arriving one is.</li>
+ * </ul>
+ * 
+ * The time each cloudlet spends in the queue is recorded as an interval based measure of the owner's
+ * {@link Sim_stat}. Depth, high water mark and drop counts are kept as well.
+ * 
+ * Defaults are read from the system properties <code>cloudsim.ext.queue.capacity</code>, 
+ * <code>cloudsim.ext.queue.admission</code> (drop, shed-oldest or priority) and 
+ * <code>cloudsim.ext.queue.priorities</code> (e.g. <code>UB1:2,UB2:1</code>).
+ */
+public class CloudletQueue {
+	
+	public enum AdmissionPolicy {
+		DROP,
+		SHED_OLDEST,
+		PRIORITY
+	}
+	
+	private static final int INITIAL_RING_SIZE = 16;
+	
+	private Sim_stat stat;
+	private String measureName;
+	private int capacity = Integer.getInteger("cloudsim.ext.queue.capacity", 0);
+	private AdmissionPolicy admissionPolicy = parsePolicy(System.getProperty("cloudsim.ext.queue.admission"), 
+														  AdmissionPolicy.DROP);
+	private Map<String, Integer> userBasePriorities = parsePriorities(System.getProperty("cloudsim.ext.queue.priorities"));
+	
+	/** One ring per priority, index 0 is the lowest */
+	private Ring[] rings = new Ring[]{ new Ring() };
+	private int size;
+	private int highWaterMark;
+	private long enqueuedCount;
+	private long dequeuedCount;
+	private long droppedCount;
+	
+	/**
+	 * @param stat statistics of the owning entity, the waiting time measure is added to it
+	 * @param measureName name of the waiting time measure
+	 */
+	public CloudletQueue(Sim_stat stat, String measureName){
+		this.stat = stat;
+		this.measureName = measureName;
+		
+		stat.add_measure(measureName, Sim_stat.INTERVAL_BASED);
+	}
+	
+	/**
+	 * Adds a cloudlet to the queue, subject to the admission policy if the queue is full.
+	 * The caller is responsible for completing the request of a dropped cloudlet.
+	 * 
+	 * @param cl
+	 * @param now current simulation time
+	 * @return the cloudlet dropped by the admission policy, either <code>cl</code> or a 
+	 * 			queued one it replaced, or null if nothing was dropped
+	 */
+	public InternetCloudlet offer(InternetCloudlet cl, double now){
+		int priority = getPriority(cl);
+		InternetCloudlet shed = null;
+		
+		if (capacity > 0 && size >= capacity){
+			if (admissionPolicy == AdmissionPolicy.DROP){
+				droppedCount++;
+				return cl;
+			}
+			
+			int victim = (admissionPolicy == AdmissionPolicy.SHED_OLDEST) ? oldestRing() : lowestRing();
+			if (admissionPolicy == AdmissionPolicy.PRIORITY && victim >= priority){
+				droppedCount++;
+				return cl;
+			}
+			shed = rings[victim].poll();
+			size--;
+			droppedCount++;
+		}
+		
+		ringFor(priority).add(cl, now);
+		size++;
+		enqueuedCount++;
+		if (size > highWaterMark){
+			highWaterMark = size;
+		}
+		
+		return shed;
+	}
+	
+	/**
+	 * Removes the next cloudlet to be served and records the time it waited.
+	 * 
+	 * @param now current simulation time
+	 * @return the cloudlet, or null if the queue is empty
+	 */
+	public InternetCloudlet poll(double now){
+		for (int p = rings.length - 1; p >= 0; p--){
+			Ring ring = rings[p];
+			if (ring.size > 0){
+				double enqueueTime = ring.times[ring.head];
+				InternetCloudlet cl = ring.poll();
+				size--;
+				dequeuedCount++;
+				stat.update(measureName, enqueueTime, now);
+				return cl;
+			}
+		}
+		
+		return null;
+	}
+	
+	/** @return the ring holding the cloudlet that has waited longest */
+	private int oldestRing(){
+		int oldest = -1;
+		for (int p = 0; p < rings.length; p++){
+			Ring ring = rings[p];
+			if (ring.size > 0 && (oldest == -1 || ring.times[ring.head] < rings[oldest].times[rings[oldest].head])){
+				oldest = p;
+			}
+		}
+		return oldest;
+	}
+	
+	/** @return the lowest priority ring with any cloudlets */
+	private int lowestRing(){
+		for (int p = 0; p < rings.length; p++){
+			if (rings[p].size > 0){
+				return p;
+			}
+		}
+		return -1;
+	}
+	
+	private int getPriority(InternetCloudlet cl){
+		if (admissionPolicy != AdmissionPolicy.PRIORITY || cl.getOriginator() == null){
+			return 0;
+		}
+		
+		Integer priority = userBasePriorities.get(cl.getOriginator().get_name());
+		return (priority == null) ? 0 : priority;
+	}
+	
+	private Ring ringFor(int priority){
+		if (priority >= rings.length){
+			int oldLength = rings.length;
+			rings = Arrays.copyOf(rings, priority + 1);
+			for (int p = oldLength; p < rings.length; p++){
+				rings[p] = new Ring();
+			}
+		}
+		return rings[priority];
+	}
+	
+	/**
+	 * @return the number of cloudlets waiting
+	 */
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	/**
+	 * @return the largest number of cloudlets that have waited at the same time
+	 */
+	public int getHighWaterMark(){
+		return highWaterMark;
+	}
+	
+	/**
+	 * @return the number of cloudlets accepted into the queue
+	 */
+	public long getEnqueuedCount(){
+		return enqueuedCount;
+	}
+	
+	/**
+	 * @return the number of cloudlets that left the queue for a VM
+	 */
+	public long getDequeuedCount(){
+		return dequeuedCount;
+	}
+	
+	/**
+	 * @return the number of cloudlets dropped by the admission policy
+	 */
+	public long getDroppedCount(){
+		return droppedCount;
+	}
+	
+	/**
+	 * @param capacity maximum number of waiting cloudlets, 0 for unbounded
+	 */
+	public void setCapacity(int capacity){
+		this.capacity = capacity;
+	}
+	
+	public int getCapacity(){
+		return capacity;
+	}
+	
+	/**
+	 * @param admissionPolicy what to do with arrivals when the queue is full
+	 */
+	public void setAdmissionPolicy(AdmissionPolicy admissionPolicy){
+		this.admissionPolicy = admissionPolicy;
+	}
+	
+	public AdmissionPolicy getAdmissionPolicy(){
+		return admissionPolicy;
+	}
+	
+	/**
+	 * Sets the priority of the cloudlets from a user base, used by {@link AdmissionPolicy#PRIORITY}.
+	 * 
+	 * @param userBaseName
+	 * @param priority 0 or more, higher is served first. User bases default to 0.
+	 */
+	public void setUserBasePriority(String userBaseName, int priority){
+		if (priority < 0){
+			throw new IllegalArgumentException("Priority must not be negative: " + priority);
+		}
+		userBasePriorities.put(userBaseName, priority);
+	}
+	
+	/**
+	 * Parses a policy name as used in configuration. Accepts "drop", "shed-oldest" and "priority", ignoring case.
+	 * 
+	 * @param name
+	 * @param defaultPolicy returned if the name is null or not recognised
+	 * @return
+	 */
+	public static AdmissionPolicy parsePolicy(String name, AdmissionPolicy defaultPolicy){
+		if (name == null){
+			return defaultPolicy;
+		}
+		
+		String s = name.trim().toUpperCase().replace("-", "_");
+		for (AdmissionPolicy p : AdmissionPolicy.values()){
+			if (p.name().equals(s)){
+				return p;
+			}
+		}
+		
+		return defaultPolicy;
+	}
+	
+	/**
+	 * Parses user base priorities in the form <code>UB1:2,UB2:1</code>. Malformed entries are ignored.
+	 */
+	private static Map<String, Integer> parsePriorities(String spec){
+		Map<String, Integer> priorities = new HashMap<String, Integer>();
+		if (spec == null){
+			return priorities;
+		}
+		
+		for (String entry : spec.split(",")){
+			int sep = entry.lastIndexOf(':');
+			if (sep <= 0){
+				continue;
+			}
+			try {
+				int priority = Integer.parseInt(entry.substring(sep + 1).trim());
+				if (priority >= 0){
+					priorities.put(entry.substring(0, sep).trim(), priority);
+				}
+			} catch (NumberFormatException e){
+				System.out.println("Ignoring queue priority '" + entry + "'");
+			}
+		}
+		
+		return priorities;
+	}
+	
+	/** Growable FIFO ring of cloudlets and their enqueue times */
+	private static class Ring {
+		InternetCloudlet[] items = new InternetCloudlet[INITIAL_RING_SIZE];
+		double[] times = new double[INITIAL_RING_SIZE];
+		int head;
+		int size;
+		
+		void add(InternetCloudlet cl, double time){
+			if (size == items.length){
+				grow();
+			}
+			int tail = (head + size) & (items.length - 1);
+			items[tail] = cl;
+			times[tail] = time;
+			size++;
+		}
+		
+		InternetCloudlet poll(){
+			InternetCloudlet cl = items[head];
+			items[head] = null;
+			head = (head + 1) & (items.length - 1);
+			size--;
+			return cl;
+		}
+		
+		/** Doubles the ring, keeping the length a power of two and unwrapping the contents */
+		private void grow(){
+			int n = items.length;
+			InternetCloudlet[] newItems = new InternetCloudlet[n * 2];
+			double[] newTimes = new double[n * 2];
+			int firstPart = n - head;
+			System.arraycopy(items, head, newItems, 0, firstPart);
+			System.arraycopy(items, 0, newItems, firstPart, head);
+			System.arraycopy(times, head, newTimes, 0, firstPart);
+			System.arraycopy(times, 0, newTimes, firstPart, head);
+			items = newItems;
+			times = newTimes;
+			head = 0;
+		}
+	}
+}
@@ -18,10 +18,12 @@ import cloudsim.ext.Constants;
 import cloudsim.ext.GeoLocatable;
 import cloudsim.ext.InternetCharacteristics;
 import cloudsim.ext.InternetCloudlet;
+import cloudsim.ext.RequestBatch;
 import cloudsim.ext.event.CloudSimEvent;
 import cloudsim.ext.event.CloudSimEventListener;
 import cloudsim.ext.event.CloudSimEvents;
 import cloudsim.ext.event.CloudsimObservable;
+import cloudsim.ext.event.VmAllocationListener;
 import cloudsim.ext.stat.HourlyEventCounter;
 import cloudsim.ext.stat.HourlyStat;
 import cloudsim.ext.util.CommPath;
@@ -46,8 +48,14 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 	
 
 	private List<CloudSimEventListener> listeners;
+	private VmAllocationListener[] allocationListeners = new VmAllocationListener[0];
+	/** Reused for every VM event fired to the generic listeners */
+	private CloudSimEvent allocatedEvent = new CloudSimEvent(CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM);
+	private CloudSimEvent finishedEvent = new CloudSimEvent(CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET);
 	private VmLoadBalancer loadBalancer;
+	private VmCapacityOracle capacityOracle;
 	private int region;
+	private InternetCharacteristics internetCharacteristics;
 	private Sim_stat stat;
 	private int queuedCount = 0;
 	private double costPerVmHour;
@@ -57,12 +65,22 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 	private HourlyStat hourlyProcessingTimes;
 	private Map<Integer, Double[]> vmUsage;
 	private Map<Integer, VirtualMachineState> vmStatesList;
-	private Map<Integer, Long[]> processingCloudletStatuses;
+	private RequestStatusTable processingCloudletStatuses;
 	private int requestsPerCloudlet;
-	private List<InternetCloudlet> waitingQueue;
+	private CloudletQueue waitingQueue;
+	/** Sub-cloudlets of the request being handled, reused between requests */
+	private InternetCloudlet[] batch = new InternetCloudlet[0];
+	private int[] batchVmIds = new int[0];
+	private int batchSize;
+	private static final int SUBMIT_SENT = Integer.MIN_VALUE;
+	/** Cloudlets assigned to VMs but not yet sent, see {@link #flushSubmits()} */
+	private InternetCloudlet[] pendingSubmits = new InternetCloudlet[0];
+	private int[] pendingDests = new int[0];
+	private int pendingCount;
 	private String dcName;
 	private boolean lastVmCreateFailed = false;
 	private int allRequestsProcessed = 0;
+	private long droppedRequests = 0;
 		
 	/** Constructor. */
 	public DatacenterController(String name, 
@@ -71,6 +89,41 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 									double costPerDataGB,
 									int requestsPerCloudlet,
 									String loadBalancePolicy) throws Exception {
+		this(name, region, costPerVmHour, costPerDataGB, requestsPerCloudlet, loadBalancePolicy, null);
+	}
+	
+	/** 
+	 * Constructor. 
+	 * 
+	 * @param loadBalancePolicy name of a policy available from {@link VmLoadBalancerRegistry}
+	 * @param loadBalancerProperties passed on to the {@link VmLoadBalancerFactory}, may be null
+	 */
+	public DatacenterController(String name, 
+									int region, 
+									double costPerVmHour, 
+									double costPerDataGB,
+									int requestsPerCloudlet,
+									String loadBalancePolicy,
+									Map<String, String> loadBalancerProperties) throws Exception {
+		this(name, region, costPerVmHour, costPerDataGB, requestsPerCloudlet, loadBalancePolicy, loadBalancerProperties,
+			 InternetCharacteristics.getInstance());
+	}
+	
+	/** 
+	 * Constructor. 
+	 * 
+	 * @param loadBalancePolicy name of a policy available from {@link VmLoadBalancerRegistry}
+	 * @param loadBalancerProperties passed on to the {@link VmLoadBalancerFactory}, may be null
+	 * @param internetCharacteristics the network model of the simulation this data center belongs to
+	 */
+	public DatacenterController(String name, 
+									int region, 
+									double costPerVmHour, 
+									double costPerDataGB,
+									int requestsPerCloudlet,
+									String loadBalancePolicy,
+									Map<String, String> loadBalancerProperties,
+									InternetCharacteristics internetCharacteristics) throws Exception {
 		super(name + "-Broker");
 		
 		this.dcName = name;
@@ -83,8 +136,9 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		this.costPerVmHour = costPerVmHour;
 		this.costPerDataGB = costPerDataGB;
 		this.requestsPerCloudlet = requestsPerCloudlet;
+		this.internetCharacteristics = internetCharacteristics;
 		
-		InternetCharacteristics.getInstance().addEntity(this);
+		internetCharacteristics.addEntity(this);
 		
 		stat = new Sim_stat();
 		stat.add_measure(DC_SERVICE_TIME, Sim_stat.INTERVAL_BASED);
@@ -96,18 +150,11 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		
 		vmUsage = new HashMap<Integer, Double[]>();
 		vmStatesList = Collections.synchronizedMap(new HashMap<Integer, VirtualMachineState>());
-		waitingQueue = Collections.synchronizedList(new LinkedList<InternetCloudlet>());
-		processingCloudletStatuses = new HashMap<Integer, Long[]>();
-		
-		if (loadBalancePolicy.equals(Constants.LOAD_BALANCE_ANT_COLONY)) {
-			this.loadBalancer = new AntColonyVmLoadBalancer(this);
-		} else if (loadBalancePolicy.equals(Constants.LOAD_BALANCE_HONEY_COLONY)) {
-			this.loadBalancer = new honeyBee(this);
-		} else if (loadBalancePolicy.equals(Constants.LOAD_BALANCE_MIN_MIN)) {
-			this.loadBalancer = new MinMinVmLoadBalancer(this);
-		} else if (loadBalancePolicy.equals(Constants.LOAD_BALANCE_MAX_MIN)) {
-			this.loadBalancer = new MaxMinVmLoadBalancer(this);
-		}
+		waitingQueue = new CloudletQueue(stat, DC_QUEUE_WAITING_TIME);
+		processingCloudletStatuses = new RequestStatusTable();
+		
+		this.capacityOracle = new VmCapacityOracle(this);
+		this.loadBalancer = VmLoadBalancerRegistry.createLoadBalancer(loadBalancePolicy, this, loadBalancerProperties);
 	}
 	
 	
@@ -154,7 +201,9 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
         }
         
         System.out.println(get_name() + " finalizing, submitted cloudlets=" + cloudletsSubmitted 
-        					+ " processing cloudlets=" + processingCloudletStatuses.size() + " ,allRequestsProcessed=" + allRequestsProcessed);
+        					+ " processing cloudlets=" + processingCloudletStatuses.size() + " ,allRequestsProcessed=" + allRequestsProcessed
+        					+ " ,droppedRequests=" + droppedRequests);
+        System.out.println(get_name() + " request table: " + processingCloudletStatuses);
 	}//body
 
 	@Override
@@ -166,9 +215,16 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		if (ev.get_tag()== Constants.REQUEST_INTERNET_CLOUDLET_TAG){
 	        if ((payload != null) && (payload instanceof InternetCloudlet)){	
 				handleRequestCloudlet((InternetCloudlet) payload);
+	        } else if (payload instanceof RequestBatch){
+	        	handleRequestBatch((RequestBatch) payload);
 	        } else {
 	        	System.out.println("invalid payload");
 	        }
+		} else if (ev.get_tag() == DatacenterTags.VM_MIGRATE_ACK){
+			int[] array = (int[]) payload;
+			if (array[2] == GridSimTags.TRUE){
+				capacityOracle.refreshAll(loadBalancer);
+			}
 		} else if ((ev.get_tag() == GridSimTags.GRIDLET_RETURN) && (payload instanceof InternetCloudlet)){
 			if ((payload != null) && (payload instanceof InternetCloudlet)){
 				InternetCloudlet cl = (InternetCloudlet) payload;
@@ -190,20 +246,22 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		cloudletCompletedProcessing(cl);
 
 		int parentRequest = cl.getParentId();
-		Long[] parentReqStatus = processingCloudletStatuses.remove(parentRequest);
+		int parentReqStatus = processingCloudletStatuses.find(parentRequest);
 		
-		if (parentReqStatus == null){
+		if (parentReqStatus == -1){
 			System.out.println("Got response for " + parentRequest + " but it seems to be completed.");
 			return;
 		}
 		
-		long totalRequests = parentReqStatus[0];
-		long completedRequests = parentReqStatus[1] + cl.getRequestCount();
-		final long startTime = parentReqStatus[2];
+		long totalRequests = processingCloudletStatuses.getTotal(parentReqStatus);
+		long previouslyCompleted = processingCloudletStatuses.getCompleted(parentReqStatus);
+		long droppedCount = processingCloudletStatuses.getDropped(parentReqStatus);
+		long completedRequests = previouslyCompleted + cl.getRequestCount();
+		final long startTime = processingCloudletStatuses.getStartTime(parentReqStatus);
 		
 		//If this is the first response received for the orginal request, send response back to UserBase
-		// Simulation should capture the time for single request, not all
-		if (parentReqStatus[1] == 0){
+		// Simulation should capture the time for single request, not all. Dropped parts are not responses.
+		if (previouslyCompleted == droppedCount){
 			double endTime = GridSim.clock();
 			double thisProcessingTime = (endTime - startTime);
 			
@@ -222,22 +280,64 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 			
 			//System.out.println(endTime + ": DC processing time for " + parentRequest + "=" + thisProcessingTime + " in vm " + cl.getVmId() + " and current processingqueue=" + processingCloudletStatuses.size());
 			
-			InternetCharacteristics.getInstance().updateSerivceLatency(get_name(), thisProcessingTime);
+			internetCharacteristics.updateSerivceLatency(get_name(), thisProcessingTime);
 		}
 		
 		//But keep on executing rest of the cloudlets running to keep the Data Center loaded
 		if (completedRequests >= totalRequests){
-			allRequestsProcessed += totalRequests;
+			allRequestsProcessed += totalRequests - droppedCount;
+			processingCloudletStatuses.remove(parentReqStatus);
 								
 		} else {
 			//System.out.println(GridSim.clock() + ":" + get_name() + " processing " + parentRequest + " " + completedRequests + "/" + totalRequests + " complete");
 			
-			processingCloudletStatuses.put(parentRequest, new Long[]{totalRequests, completedRequests, startTime});
+			processingCloudletStatuses.setCompleted(parentReqStatus, completedRequests);
 		}
 		
 		totalData += cl.getDataSize();
 		
 	}
+	
+	/**
+	 * Handle a cloudlet dropped by the admission policy of the waiting queue. Its requests count as 
+	 * completed for the parent request, and if none of the parent request could be processed a failure
+	 * response is sent back to the UserBase, so the request does not stay in progress forever.
+	 * 
+	 * @param cl
+	 */
+	private void handleDroppedCloudlet(InternetCloudlet cl) {
+		droppedRequests += cl.getRequestCount();
+		
+		int parentRequest = cl.getParentId();
+		int parentReqStatus = processingCloudletStatuses.find(parentRequest);
+		if (parentReqStatus == -1){
+			return;
+		}
+		
+		long totalRequests = processingCloudletStatuses.getTotal(parentReqStatus);
+		long completedRequests = processingCloudletStatuses.getCompleted(parentReqStatus) + cl.getRequestCount();
+		long droppedCount = processingCloudletStatuses.getDropped(parentReqStatus) + cl.getRequestCount();
+		
+		if (completedRequests < totalRequests){
+			processingCloudletStatuses.setCompleted(parentReqStatus, completedRequests);
+			processingCloudletStatuses.setDropped(parentReqStatus, droppedCount);
+			return;
+		}
+		
+		if (droppedCount >= totalRequests){
+			InternetCloudlet responseCloudlet = new InternetCloudlet(parentRequest, 
+																	 0, 
+																	 0, 
+																	 0, 
+																	 cl.getOriginator(), 
+																	 cl.getAppId(), 
+																	 (int) totalRequests);
+			responseCloudlet.addData(Constants.PARAM_FAILED, Boolean.TRUE);
+			send("Internet", 0.0, Constants.RESPONSE_INTERNET_CLOUDLET_TAG, responseCloudlet);
+		}
+		allRequestsProcessed += totalRequests - droppedCount;
+		processingCloudletStatuses.remove(parentReqStatus);
+	}
 
 
 	/** 
@@ -249,10 +349,43 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 	private void handleRequestCloudlet(InternetCloudlet cl) {
 		
 		//Reflect completion of request transmission in traffic levels
-		InternetCharacteristics.getInstance().removeTraffic((CommPath) cl.getData(Constants.PARAM_COMM_PATH), 
-															 cl.getRequestCount());
+		internetCharacteristics.removeTraffic((CommPath) cl.getData(Constants.PARAM_COMM_PATH), 
+											  cl.getRequestCount());
 		
-		int numOfActualRequests = cl.getRequestCount();
+		addRequest(cl.getCloudletId(), cl.getRequestCount(), cl.getGridletLength(), cl.getGridletFileSize(),
+				   cl.getGridletOutputSize(), cl.getOriginator(), cl.getAppId());
+		submitBatch();
+	}
+	
+	/** 
+	 * Handle the request groups of a {@link RequestBatch}. Each group is split into cloudlets as if it
+	 * had arrived on its own, and the cloudlets of all groups are submitted together.
+	 * 
+	 * @param requests
+	 */
+	private void handleRequestBatch(RequestBatch requests) {
+		internetCharacteristics.removeTraffic(requests.getCommPath(), requests.getRequestCount());
+		
+		for (int g = 0; g < requests.getGroupCount(); g++){
+			addRequest(requests.getGroupId(g), requests.getRequestCount(g), requests.getLengthPerRequest(), 
+					   requests.getDataSizePerRequest(), requests.getOutputSizePerRequest(), 
+					   requests.getOriginator(), requests.getAppId());
+		}
+		submitBatch();
+	}
+	
+	/**
+	 * Splits a request group into cloudlets of DcRequestGroupingFactor requests, adds them to the 
+	 * current batch and starts tracking the request.
+	 * 
+	 * @param requestId
+	 * @param numOfActualRequests number of requests in the group
+	 * @param length instruction length of one request
+	 * @param fileSize data size of one request
+	 * @param outputSize output size of one request
+	 */
+	private void addRequest(int requestId, int numOfActualRequests, double length, long fileSize, long outputSize,
+							GeoLocatable originator, int appId) {
 		int numOfReqCloudlets;
 		if (numOfActualRequests <= requestsPerCloudlet){
 			numOfReqCloudlets = 0;
@@ -262,80 +395,158 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		
 		int i;
 		for (i = 0; i < numOfReqCloudlets; i++){
-			InternetCloudlet subCloudlet = new InternetCloudlet(cl.getCloudletId() * 1000 + i,
-																cl.getGridletLength() * requestsPerCloudlet,
-																cl.getGridletFileSize() * requestsPerCloudlet,
-																cl.getGridletOutputSize() * requestsPerCloudlet,
-																cl.getOriginator(),
-																cl.getAppId(),
+			InternetCloudlet subCloudlet = new InternetCloudlet(requestId * 1000 + i,
+																length * requestsPerCloudlet,
+																fileSize * requestsPerCloudlet,
+																outputSize * requestsPerCloudlet,
+																originator,
+																appId,
 																requestsPerCloudlet);
-			subCloudlet.setParentId(cl.getCloudletId());
-			submitNewCloudlet(subCloudlet);	
+			subCloudlet.setParentId(requestId);
+			addToBatch(subCloudlet);
 		}
 		
 		//If there are any remaining, which didn't fit into a default sized group
 		int remainingRequests = numOfActualRequests - requestsPerCloudlet * numOfReqCloudlets;
 		if (remainingRequests != 0){
-			InternetCloudlet subCloudlet = new InternetCloudlet(cl.getCloudletId() * 1000 + i + 1,
-																cl.getGridletLength() * remainingRequests,
-																cl.getGridletFileSize() * remainingRequests,
-																cl.getGridletOutputSize() * remainingRequests,
-																cl.getOriginator(),
-																cl.getAppId(),
+			InternetCloudlet subCloudlet = new InternetCloudlet(requestId * 1000 + i + 1,
+																length * remainingRequests,
+																fileSize * remainingRequests,
+																outputSize * remainingRequests,
+																originator,
+																appId,
 																remainingRequests);
-			subCloudlet.setParentId(cl.getCloudletId());
-			submitNewCloudlet(subCloudlet);	
+			subCloudlet.setParentId(requestId);
+			addToBatch(subCloudlet);
 		}
 				    
-		totalData += cl.getDataSize();
+		totalData += fileSize;
 		long startTime = (long) GridSim.clock();
 		
-		//System.out.println(startTime + ": " + get_name() + " started processing " + cl.getCloudletId());
-		processingCloudletStatuses.put(cl.getCloudletId(), new Long[]{(long) numOfActualRequests, 0L, startTime});		
+		//System.out.println(startTime + ": " + get_name() + " started processing " + requestId);
+		processingCloudletStatuses.put(requestId, numOfActualRequests, 0L, startTime);		
+	}
+	
+	private void addToBatch(InternetCloudlet subCloudlet){
+		if (batchSize == batch.length){
+			batch = Arrays.copyOf(batch, Math.max(8, batchSize * 2));
+			batchVmIds = new int[batch.length];
+		}
+		batch[batchSize++] = subCloudlet;
+	}
+	
+	/**
+	 * Submits the sub-cloudlets of a request. A {@link BatchVmScheduler} load balancer assigns them 
+	 * all at once, otherwise each one goes through the load balancer on its own. While cloudlets are
+	 * waiting, new ones join the end of the queue instead, so they are not served before them.
+	 */
+	private void submitBatch(){
+		if (!waitingQueue.isEmpty()){
+			double now = GridSim.clock();
+			for (int i = 0; i < batchSize; i++){
+				hourlyArrival.addEvent(now, batch[i].getRequestCount());
+				enqueue(batch[i]);
+			}
+			Arrays.fill(batch, 0, batchSize, null);
+			batchSize = 0;
+			submitWaitingCloudlets();
+			return;
+		}
+		
+		if (loadBalancer instanceof BatchVmScheduler){
+			for (int i = 0; i < batchSize; i++){
+				hourlyArrival.addEvent(GridSim.clock(), batch[i].getRequestCount());
+			}
+			scheduleBatch();
+		} else {
+			for (int i = 0; i < batchSize; i++){
+				submitNewCloudlet(batch[i]);
+			}
+			Arrays.fill(batch, 0, batchSize, null);
+			batchSize = 0;
+		}
+		
+		flushSubmits();
+	}
+	
+	/** Assigns and submits the current batch through the {@link BatchVmScheduler} load balancer */
+	private void scheduleBatch(){
+		((BatchVmScheduler) loadBalancer).scheduleBatch(batch, batchSize, batchVmIds);
+		for (int i = 0; i < batchSize; i++){
+			submitCloudlet(batch[i], batchVmIds[i]);
+		}
+		
+		Arrays.fill(batch, 0, batchSize, null);
+		batchSize = 0;
 	}
 	
 	private void cloudletCompletedProcessing(InternetCloudlet cl){
 		//Notify load balancer of vm getting freed up
 		int vmId = cl.getVmId();
-		CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET);
-		e.addParameter(Constants.PARAM_VM_ID, vmId);
-		fireCloudSimEvent(e);	
+		for (int i = 0; i < allocationListeners.length; i++){
+			allocationListeners[i].onFinished(vmId);
+		}
+		if (!listeners.isEmpty()){
+			finishedEvent.setVmId(vmId);
+			fireCloudSimEvent(finishedEvent);
+		}
 		
-		submitWaitingCloudlet();
+		submitWaitingCloudlets();
 	}
 	
-	private void submitWaitingCloudlet(){
-		if (loadBalancer == null){
-			System.out.println("LoadBalancer was null in submitWaitingCloudlet, initializing to MinMin");
-			loadBalancer = new MinMinVmLoadBalancer(this);
+	/**
+	 * Moves waiting cloudlets to VMs, in queue order, until the queue is empty or the load balancer
+	 * returns -1. The load balancer is not consulted at all when nothing is waiting.
+	 */
+	private void submitWaitingCloudlets(){
+		if (waitingQueue.isEmpty()){
+			return;
 		}
-		int nextAvailVM = loadBalancer.getNextAvailableVm();
-				
-		if ((nextAvailVM != -1) && (waitingQueue.size() > 0)){
-			InternetCloudlet cl = waitingQueue.remove(0);
-			submitCloudlet(cl, nextAvailVM);
+		
+		double now = GridSim.clock();
+		if (loadBalancer instanceof BatchVmScheduler){
+			while (!waitingQueue.isEmpty()){
+				addToBatch(waitingQueue.poll(now));
+			}
+			scheduleBatch();
+		} else {
+			while (!waitingQueue.isEmpty()){
+				int nextAvailVM = loadBalancer.getNextAvailableVm();
+				if (nextAvailVM == -1){
+					break;
+				}
+				submitCloudlet(waitingQueue.poll(now), nextAvailVM);
+			}
 		}
+		
+		flushSubmits();
 	}
 
 	private void submitNewCloudlet(InternetCloudlet cl) {
 		
 		hourlyArrival.addEvent(GridSim.clock(), cl.getRequestCount());
-		if (loadBalancer == null){
-			loadBalancer = new MinMinVmLoadBalancer(this);
-		}
 		
 		int nextAvailVM = loadBalancer.getNextAvailableVm();
 					
 		if (nextAvailVM == -1){
 			//All VM's are busy. Put it in queue
 			//System.out.println("VM's busy, queueing " + cl);
-			waitingQueue.add(cl);	
-			
-			queuedCount++;
+			enqueue(cl);
 		} else {
 			submitCloudlet(cl, nextAvailVM);
 		}				
 	}
+	
+	/** Adds a cloudlet to the waiting queue, completing whichever cloudlet its admission policy drops */
+	private void enqueue(InternetCloudlet cl){
+		InternetCloudlet dropped = waitingQueue.offer(cl, GridSim.clock());
+		if (dropped != cl){
+			queuedCount++;
+		}
+		if (dropped != null){
+			handleDroppedCloudlet(dropped);
+		}
+	}
 
 
 	private void submitCloudlet(InternetCloudlet cl, int vmId) {
@@ -345,19 +556,66 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 
 		int dest = vmMapping[vmId];
 		//System.out.println(GridSim.clock()+": "+this.get_name()+ ": Sending cloudlet "+cl.getGridletID()+" to VM #"+((VirtualMachine)vmlist.get(vmId)).getVmId() + ", dest=" + dest);
-		super.send(dest,GridSimTags.SCHEDULE_NOW, GridSimTags.GRIDLET_SUBMIT, cl);
+		if (pendingCount == pendingSubmits.length){
+			pendingSubmits = Arrays.copyOf(pendingSubmits, Math.max(8, pendingCount * 2));
+			pendingDests = Arrays.copyOf(pendingDests, pendingSubmits.length);
+		}
+		pendingSubmits[pendingCount] = cl;
+		pendingDests[pendingCount] = dest;
+		pendingCount++;
 
 		cloudletsSubmitted++;
 		
 		//Notify load balancer
-		CloudSimEvent e = new CloudSimEvent(CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM);
-		e.addParameter(Constants.PARAM_VM_ID, vmId);
-		fireCloudSimEvent(e);
+		for (int i = 0; i < allocationListeners.length; i++){
+			allocationListeners[i].onAllocated(vmId);
+		}
+		if (!listeners.isEmpty()){
+			allocatedEvent.setVmId(vmId);
+			fireCloudSimEvent(allocatedEvent);
+		}
 		
 		String destName = GridSim.getEntityName(dest);
 		InternetEntitityRegistry.getInstance().addCommunicationPath(cl.getOriginator().get_name(), destName);
 	}
 	
+	/**
+	 * Sends the cloudlets submitted since the last flush, one event per data center. 
+	 * A lone cloudlet is sent as a plain <code>GRIDLET_SUBMIT</code>.
+	 */
+	private void flushSubmits(){
+		for (int i = 0; i < pendingCount; i++){
+			int dest = pendingDests[i];
+			if (dest == SUBMIT_SENT){
+				continue;
+			}
+			
+			int count = 0;
+			for (int j = i; j < pendingCount; j++){
+				if (pendingDests[j] == dest){
+					count++;
+				}
+			}
+			
+			if (count == 1){
+				super.send(dest, GridSimTags.SCHEDULE_NOW, GridSimTags.GRIDLET_SUBMIT, pendingSubmits[i]);
+			} else {
+				InternetCloudlet[] cloudlets = new InternetCloudlet[count];
+				int k = 0;
+				for (int j = i; j < pendingCount; j++){
+					if (pendingDests[j] == dest){
+						cloudlets[k++] = pendingSubmits[j];
+						pendingDests[j] = SUBMIT_SENT;
+					}
+				}
+				super.send(dest, GridSimTags.SCHEDULE_NOW, DatacenterTags.CLOUDLET_SUBMIT_BATCH, cloudlets);
+			}
+		}
+		
+		Arrays.fill(pendingSubmits, 0, pendingCount, null);
+		pendingCount = 0;
+	}
+	
 	@Override
 	protected void processVMCreate(Sim_event ev) {			
 		int[] array = (int[]) ev.get_data();
@@ -370,9 +628,10 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 			
 			vmUsage.put(vmId, new Double[]{vmStartTime, vmEndTime});
 			vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+			capacityOracle.refreshHostOf(vmId, loadBalancer);
 			
 			//If there are any waiting cloudlets in queue, attempt to re-schedule them
-			submitWaitingCloudlet();
+			submitWaitingCloudlets();
 		} else {
 			//Don't try to create VM's further in this DC
 			lastVmCreateFailed = true;
@@ -400,6 +659,7 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 			
 			VirtualMachine newVm = new VirtualMachine(newVmChar);
 			vmlist.add(newVm);
+			loadBalancer.ensureVmCapacity(vmlist.size());
 			
 			int[] oldVmMapping = vmMapping;
 			vmMapping = Arrays.copyOf(oldVmMapping, oldVmMapping.length + 1);
@@ -414,6 +674,23 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 	}
 	
 
+	/**
+	 * Sets the data center managed by this controller, so the capacity of its VMs can be read
+	 * from their hosts.
+	 * 
+	 * @param dataCenter
+	 */
+	public void setDataCenter(DataCenter dataCenter){
+		capacityOracle.setDataCenter(dataCenter);
+	}
+	
+	/**
+	 * @return the oracle providing the effective capacity of each VM
+	 */
+	public VmCapacityOracle getCapacityOracle(){
+		return capacityOracle;
+	}
+
 	/**
 	 * @return the regionId
 	 */
@@ -469,8 +746,34 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 
 
 	public void fireCloudSimEvent(CloudSimEvent e) {
-		for (CloudSimEventListener l : listeners){
-			l.cloudSimEventFired(e);
+		for (int i = 0; i < listeners.size(); i++){
+			listeners.get(i).cloudSimEventFired(e);
+		}
+	}
+	
+	
+	/**
+	 * Registers a listener for cloudlet allocations and completions. Preferred over 
+	 * {@link #addCloudSimEventListener(CloudSimEventListener)} by load balancers, as no
+	 * event objects are involved.
+	 * 
+	 * @param l
+	 */
+	public void addVmAllocationListener(VmAllocationListener l) {
+		allocationListeners = Arrays.copyOf(allocationListeners, allocationListeners.length + 1);
+		allocationListeners[allocationListeners.length - 1] = l;
+	}
+	
+	
+	public void removeVmAllocationListener(VmAllocationListener l) {
+		for (int i = 0; i < allocationListeners.length; i++){
+			if (allocationListeners[i] == l){
+				VmAllocationListener[] remaining = new VmAllocationListener[allocationListeners.length - 1];
+				System.arraycopy(allocationListeners, 0, remaining, 0, i);
+				System.arraycopy(allocationListeners, i + 1, remaining, i, remaining.length - i);
+				allocationListeners = remaining;
+				return;
+			}
 		}
 	}
 
@@ -479,6 +782,13 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 		listeners.remove(l);
 	}
 	
+	/**
+	 * @return the queue of cloudlets waiting for a VM
+	 */
+	public CloudletQueue getWaitingQueue(){
+		return waitingQueue;
+	}
+	
 	public Map<Integer, VirtualMachineState> getVmStatesList(){
 		return vmStatesList;
 	}
@@ -493,14 +803,26 @@ public class DatacenterController extends DatacenterBroker implements GeoLocatab
 
 
 	public Map<Integer, Integer> getVmAllocationStats(){
-		if (loadBalancer != null){
-			return loadBalancer.getVmAllocationCounts();
-		} else {
-			return null;
-		}
+		return loadBalancer.getVmAllocationCounts();
 	}
 
 
+	/**
+	 * @return the table of requests in progress, with its occupancy and probe statistics
+	 */
+	public RequestStatusTable getProcessingRequests(){
+		return processingCloudletStatuses;
+	}
+
+
+	/**
+	 * @return the number of requests dropped from the waiting queue by its admission policy
+	 */
+	public long getDroppedRequests() {
+		return droppedRequests;
+	}
+	
+	
 	/**
 	 * @return the allRequestsProcessed
 	 */
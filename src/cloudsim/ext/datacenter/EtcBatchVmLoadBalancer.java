@@ -0,0 +1,244 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+
+import cloudsim.ext.InternetCloudlet;
+import cloudsim.ext.event.VmAllocationListener;
+import gridsim.GridSim;
+
+/**
+ * Batch Min-Min / Max-Min scheduler over an Expected Time to Complete (ETC) matrix.
+ * 
+ * The completion time of task t on VM v is <code>max(ready[v], now) + length[t] / mips[v]</code>, where
+ * <code>ready[v]</code> is the time VM v is expected to finish the work already assigned to it and 
+ * <code>mips[v]</code> comes from the controller's {@link VmCapacityOracle}. Min-Min repeatedly assigns the 
+ * task whose best completion time is smallest, Max-Min the one whose best completion time is largest. 
+ * Since the best completion time grows with the task length, this is the same as assigning the tasks 
+ * shortest first (Min-Min) or longest first (Max-Min), each to the VM with the minimum completion time.
+ * 
+ * VMs with the same MIPS are grouped and each group keeps its VMs in a {@link VmLoadIndex} keyed on 
+ * ready time, so finding the best VM for a task costs O(groups + log n) rather than a scan of the ETC row.
+ * Ties go to the lower VM id.
+ */
+public class EtcBatchVmLoadBalancer extends VmLoadBalancer implements BatchVmScheduler, VmAllocationListener {
+	
+	private static final double NOT_MEMBER = Double.POSITIVE_INFINITY;
+
+	private final boolean maxMin;
+	private DatacenterController dcbLocal;
+	private VmCapacityOracle capacityOracle;
+	private int vmCount;
+	private double[] readyTime = new double[0];
+	private double[] vmMips = new double[0];
+	private int[] vmGroup = new int[0];
+	private int groupCount;
+	private double[] groupMips = new double[0];
+	private VmLoadIndex[] groupIndex = new VmLoadIndex[0];
+	/** Task order within the current batch, reused between batches */
+	private int[] order = new int[0];
+	private double totalLength;
+	private long taskCount;
+	
+	/**
+	 * @param dcb
+	 * @param maxMin true for Max-Min (longest task first), false for Min-Min (shortest task first)
+	 */
+	public EtcBatchVmLoadBalancer(DatacenterController dcb, boolean maxMin) {
+		super(true);
+		this.maxMin = maxMin;
+		dcbLocal = dcb;
+		capacityOracle = dcb.getCapacityOracle();
+		
+		dcb.addVmAllocationListener(this);
+	}
+	
+	/**
+	 * Assigns a single task of the average length seen so far.
+	 */
+	@Override
+	public int getNextAvailableVm() {
+		syncVmCount();
+		
+		double length = (taskCount > 0) ? totalLength / taskCount : 0.0;
+		double now = GridSim.clock();
+		int vmId = selectVm(length, now);
+		if (vmId == -1) {
+			vmId = 0;
+		} else {
+			assign(vmId, length, now);
+		}
+		
+		allocatedVm(vmId);
+		if (logAllocations) {
+			System.out.println((maxMin ? "Max-Min" : "Min-Min") + " ETC: allocated to VM " + vmId);
+		}
+		
+		return vmId;
+	}
+	
+	public void scheduleBatch(InternetCloudlet[] cloudlets, int count, int[] vmIds) {
+		syncVmCount();
+		
+		if (order.length < count) {
+			order = new int[Math.max(count, order.length * 2)];
+		}
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+			totalLength += cloudlets[i].getGridletLength();
+		}
+		taskCount += count;
+		sortByLength(cloudlets, count);
+		
+		double now = GridSim.clock();
+		for (int k = 0; k < count; k++) {
+			int t = order[k];
+			double length = cloudlets[t].getGridletLength();
+			int vmId = selectVm(length, now);
+			if (vmId == -1) {
+				vmId = 0;
+			} else {
+				assign(vmId, length, now);
+			}
+			
+			vmIds[t] = vmId;
+			allocatedVm(vmId);
+			if (logAllocations) {
+				System.out.println((maxMin ? "Max-Min" : "Min-Min") + " ETC: allocated to VM " + vmId);
+			}
+		}
+	}
+	
+	/** Insertion sort of order[0..count) by task length, ascending for Min-Min and descending for Max-Min. */
+	private void sortByLength(InternetCloudlet[] cloudlets, int count) {
+		for (int i = 1; i < count; i++) {
+			int t = order[i];
+			double length = cloudlets[t].getGridletLength();
+			int j = i - 1;
+			while (j >= 0 && comesAfter(cloudlets[order[j]].getGridletLength(), length)) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = t;
+		}
+	}
+	
+	private boolean comesAfter(double lengthA, double lengthB) {
+		return maxMin ? (lengthA < lengthB) : (lengthA > lengthB);
+	}
+	
+	/**
+	 * @return the VM with the minimum completion time for a task of the given length, -1 if there are no VMs
+	 */
+	private int selectVm(double length, double now) {
+		int best = -1;
+		double bestTime = Double.POSITIVE_INFINITY;
+		
+		for (int g = 0; g < groupCount; g++) {
+			int vmId = groupIndex[g].peekMin();
+			double ready = groupIndex[g].getKey(vmId);
+			if (ready == NOT_MEMBER) {
+				continue;
+			}
+			
+			double completion = Math.max(ready, now) + length / groupMips[g];
+			if (completion < bestTime || (completion == bestTime && vmId < best)) {
+				bestTime = completion;
+				best = vmId;
+			}
+		}
+		
+		return best;
+	}
+	
+	private void assign(int vmId, double length, double now) {
+		readyTime[vmId] = Math.max(readyTime[vmId], now) + length / vmMips[vmId];
+		groupIndex[vmGroup[vmId]].setKey(vmId, readyTime[vmId]);
+	}
+	
+	public void onAllocated(int vmId) {
+		vmAllocationCounts.incrementLive(vmId);
+	}
+	
+	public void onFinished(int vmId) {
+		// An idle VM is ready now, whatever the estimate said
+		double now = GridSim.clock();
+		if (vmAllocationCounts.decrementLive(vmId) == 0 && vmId < vmCount && readyTime[vmId] > now) {
+			readyTime[vmId] = now;
+			groupIndex[vmGroup[vmId]].setKey(vmId, now);
+		}
+	}
+	
+	@Override
+	public void vmCapacityChanged(int vmId) {
+		if (vmId >= vmCount) {
+			return;
+		}
+		
+		double mips = capacityOracle.getMips(vmId);
+		if (mips != vmMips[vmId]) {
+			groupIndex[vmGroup[vmId]].setKey(vmId, NOT_MEMBER);
+			vmMips[vmId] = mips;
+			vmGroup[vmId] = groupFor(mips);
+			groupIndex[vmGroup[vmId]].setKey(vmId, readyTime[vmId]);
+		}
+	}
+	
+	/**
+	 * @return the group of VMs with the given MIPS, created if needed
+	 */
+	private int groupFor(double mips) {
+		for (int g = 0; g < groupCount; g++) {
+			if (groupMips[g] == mips) {
+				return g;
+			}
+		}
+		
+		if (groupCount == groupMips.length) {
+			int newLength = Math.max(4, groupCount * 2);
+			groupMips = Arrays.copyOf(groupMips, newLength);
+			groupIndex = Arrays.copyOf(groupIndex, newLength);
+		}
+		
+		VmLoadIndex index = new VmLoadIndex(vmCount);
+		index.ensureSize(vmCount);
+		for (int vmId = 0; vmId < vmCount; vmId++) {
+			index.setKey(vmId, NOT_MEMBER);
+		}
+		groupMips[groupCount] = mips;
+		groupIndex[groupCount] = index;
+		
+		return groupCount++;
+	}
+	
+	/**
+	 * Adds the VMs created since the last call, which start out idle.
+	 */
+	private void syncVmCount() {
+		int newCount = dcbLocal.vmlist.size();
+		if (newCount <= vmCount) {
+			return;
+		}
+		
+		readyTime = Arrays.copyOf(readyTime, newCount);
+		vmMips = Arrays.copyOf(vmMips, newCount);
+		vmGroup = Arrays.copyOf(vmGroup, newCount);
+		vmAllocationCounts.ensureCapacity(newCount);
+		
+		int oldCount = vmCount;
+		vmCount = newCount;
+		for (int g = 0; g < groupCount; g++) {
+			groupIndex[g].ensureSize(newCount);
+			for (int vmId = oldCount; vmId < newCount; vmId++) {
+				groupIndex[g].setKey(vmId, NOT_MEMBER);
+			}
+		}
+		
+		double now = GridSim.clock();
+		for (int vmId = oldCount; vmId < newCount; vmId++) {
+			vmMips[vmId] = capacityOracle.getMips(vmId);
+			readyTime[vmId] = now;
+			vmGroup[vmId] = groupFor(vmMips[vmId]);
+			groupIndex[vmGroup[vmId]].setKey(vmId, now);
+		}
+	}
+}
@@ -1,68 +1,77 @@
 package cloudsim.ext.datacenter;
 
-import cloudsim.VirtualMachine;
+import cloudsim.ext.event.VmAllocationListener;
 
 /**
  * Max-Min Load Balancer implementation.
- * 
- * The Max-Min algorithm is similar to Min-Min but prioritizes VMs with 
+ *
+ * The Max-Min algorithm is similar to Min-Min but prioritizes VMs with
  * higher allocation counts to balance load more aggressively.
- * 
+ *
+ * The number of cloudlets each VM is currently processing is kept in a
+ * {@link VmLoadIndex} which is updated on allocation and finish events, so a
+ * selection is a constant time peek instead of a scan over all VMs.
+ *
  * @author Implementation for CloudSim Load Balancing
  */
-public class MaxMinVmLoadBalancer extends VmLoadBalancer {
-	
+public class MaxMinVmLoadBalancer extends VmLoadBalancer implements VmAllocationListener {
+
 	private DatacenterController dcbLocal;
-	
+	private VmLoadIndex loadIndex;
+
 	public MaxMinVmLoadBalancer(DatacenterController dcb) {
-		super();
+		super(true);
 		dcbLocal = dcb;
+		loadIndex = new VmLoadIndex();
+
+		dcb.addVmAllocationListener(this);
 	}
-	
+
 	@Override
 	public int getNextAvailableVm() {
 		// Max-Min: Find VM with MINIMUM allocation count (least loaded)
 		// This is the "Min" part - selecting the minimum loaded VM
-		// The "Max" part refers to task selection (largest task first), 
+		// The "Max" part refers to task selection (largest task first),
 		// which happens in the scheduler, not here
-		
-		int minAllocationCount = Integer.MAX_VALUE;
-		int selectedVmId = 0;
-		
-		for (int vmId = 0; vmId < dcbLocal.vmlist.size(); vmId++) {
-			Integer allocationCount = vmAllocationCounts.get(vmId);
-			if (allocationCount == null) {
-				allocationCount = 0;
-			}
-			
-			// Select VM with minimum allocation count
-			// If tied, prefer lower VM ID
-			if (allocationCount < minAllocationCount || 
-			    (allocationCount == minAllocationCount && vmId < selectedVmId)) {
-				minAllocationCount = allocationCount;
-				selectedVmId = vmId;
-			}
+		// If tied, the index prefers the lower VM ID
+		syncVmCount();
+
+		int selectedVmId = loadIndex.peekMin();
+		if (selectedVmId == -1) {
+			selectedVmId = 0;
 		}
-		
+
 		allocatedVm(selectedVmId);
-		System.out.println("Max-Min: allocated to VM " + selectedVmId);
-		
+		if (logAllocations) {
+			System.out.println("Max-Min: allocated to VM " + selectedVmId);
+		}
+
 		return selectedVmId;
 	}
+
+	public void onAllocated(int vmId) {
+		syncVmCount();
+		vmAllocationCounts.incrementLive(vmId);
+		loadIndex.setKey(vmId, vmAllocationCounts.getLive(vmId));
+	}
 	
+	public void onFinished(int vmId) {
+		syncVmCount();
+		vmAllocationCounts.decrementLive(vmId);
+		loadIndex.setKey(vmId, vmAllocationCounts.getLive(vmId));
+	}
+
 	/**
-	 * Get the MIPS (Million Instructions Per Second) of a VM
-	 * 
-	 * @param vmId The VM ID
-	 * @return VM MIPS value
+	 * Brings the load index in line with the controller's VM list, which grows when
+	 * new VMs are created during the simulation.
 	 */
-	private double getVmMips(int vmId) {
-		if (vmId < 0 || vmId >= dcbLocal.vmlist.size()) {
-			return 1000.0;
+	private void syncVmCount() {
+		int vmCount = dcbLocal.vmlist.size();
+		if (vmCount <= loadIndex.size()) {
+			return;
 		}
-		
-		VirtualMachine vm = (VirtualMachine) dcbLocal.vmlist.get(vmId);
-		int cpus = vm.getCpus();
-		return cpus > 0 ? cpus * 1000.0 : 1000.0;
+
+		vmAllocationCounts.ensureCapacity(vmCount);
+		loadIndex.ensureSize(vmCount);
 	}
 }
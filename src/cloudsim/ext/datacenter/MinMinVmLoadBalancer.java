@@ -1,68 +1,88 @@
 package cloudsim.ext.datacenter;
 
-import cloudsim.VirtualMachine;
-import cloudsim.ext.InternetCloudlet;
+import cloudsim.ext.event.VmAllocationListener;
 
 /**
  * Min-Min Load Balancer implementation.
- * 
- * The Min-Min algorithm selects the VM with the minimum Estimated Time to 
+ *
+ * The Min-Min algorithm selects the VM with the minimum Estimated Time to
  * Complete (ETC) for the current cloudlet and assigns it to that VM.
- * 
+ *
+ * The ETC of a VM is approximated by the number of cloudlets it is currently
+ * processing divided by its effective MIPS, as reported by the controller's
+ * {@link VmCapacityOracle}. These values are kept in a {@link VmLoadIndex}
+ * which is updated on allocation and finish events, so a selection is a constant
+ * time peek instead of a scan over all VMs.
+ *
  * @author Implementation for CloudSim Load Balancing
  */
-public class MinMinVmLoadBalancer extends VmLoadBalancer {
-	
+public class MinMinVmLoadBalancer extends VmLoadBalancer implements VmAllocationListener {
+
 	private DatacenterController dcbLocal;
-	private InternetCloudlet currentCloudlet;
-	
+	private VmCapacityOracle capacityOracle;
+	private VmLoadIndex loadIndex;
+
 	public MinMinVmLoadBalancer(DatacenterController dcb) {
-		super();
+		super(true);
 		dcbLocal = dcb;
+		capacityOracle = dcb.getCapacityOracle();
+		loadIndex = new VmLoadIndex();
+
+		dcb.addVmAllocationListener(this);
 	}
-	
+
 	@Override
 	public int getNextAvailableVm() {
-		// Find VM with minimum ETC for load balancing
-		double minETC = Double.MAX_VALUE;
-		int selectedVmId = 0;
-		
-		for (int vmId = 0; vmId < dcbLocal.vmlist.size(); vmId++) {
-			// Find VM with lowest allocation count (approximate load)
-			Integer allocationCount = vmAllocationCounts.get(vmId);
-			if (allocationCount == null) {
-				allocationCount = 0;
-			}
-			
-			// Simple ETC-like metric: allocation count / MIPS
-			double vmMips = getVmMips(vmId);
-			double loadMetric = allocationCount / vmMips;
-			
-			if (loadMetric < minETC) {
-				minETC = loadMetric;
-				selectedVmId = vmId;
-			}
+		syncVmCount();
+
+		// VM with minimum ETC for load balancing
+		int selectedVmId = loadIndex.peekMin();
+		if (selectedVmId == -1) {
+			selectedVmId = 0;
 		}
-		
+
 		allocatedVm(selectedVmId);
-		System.out.println("Min-Min: allocated to VM " + selectedVmId);
-		
+		if (logAllocations) {
+			System.out.println("Min-Min: allocated to VM " + selectedVmId);
+		}
+
 		return selectedVmId;
 	}
+
+	public void onAllocated(int vmId) {
+		syncVmCount();
+		vmAllocationCounts.incrementLive(vmId);
+		updateKey(vmId);
+	}
+	
+	public void onFinished(int vmId) {
+		syncVmCount();
+		vmAllocationCounts.decrementLive(vmId);
+		updateKey(vmId);
+	}
 	
+	@Override
+	public void vmCapacityChanged(int vmId) {
+		if (vmId < loadIndex.size()) {
+			updateKey(vmId);
+		}
+	}
+	
+	private void updateKey(int vmId) {
+		loadIndex.setKey(vmId, vmAllocationCounts.getLive(vmId) / capacityOracle.getMips(vmId));
+	}
+
 	/**
-	 * Get the MIPS (Million Instructions Per Second) of a VM
-	 * 
-	 * @param vmId The VM ID
-	 * @return VM MIPS value
+	 * Brings the load index in line with the controller's VM list, which grows when
+	 * new VMs are created during the simulation.
 	 */
-	private double getVmMips(int vmId) {
-		if (vmId < 0 || vmId >= dcbLocal.vmlist.size()) {
-			return 1000.0;
+	private void syncVmCount() {
+		int vmCount = dcbLocal.vmlist.size();
+		if (vmCount <= loadIndex.size()) {
+			return;
 		}
-		
-		VirtualMachine vm = (VirtualMachine) dcbLocal.vmlist.get(vmId);
-		int cpus = vm.getCpus();
-		return cpus > 0 ? cpus * 1000.0 : 1000.0;
+
+		vmAllocationCounts.ensureCapacity(vmCount);
+		loadIndex.ensureSize(vmCount);
 	}
 }
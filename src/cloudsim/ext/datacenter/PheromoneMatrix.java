@@ -0,0 +1,318 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+
+/**
+ * Square pheromone matrix used by {@link AntColonyVmLoadBalancer}, where cell (i, j) is the
+ * pheromone on the trail from VM i to VM j. Implementations keep the total of every column up to
+ * date as cells change, so the pheromone strength of a VM can be read in constant time instead of
+ * summing a column.
+ *
+ * Two storage modes are available:
+ * <ul>
+ * <li>{@link Mode#DENSE} stores every cell in a single flat row-major <code>double[]</code>.
+ * 		Reinforcing a column is O(n) and memory is O(n<sup>2</sup>).</li>
+ * <li>{@link Mode#LOW_RANK} stores each column as one value shared by all rows, plus a sparse
+ * 		list of per-cell deposits. Reinforcing a column is O(1) and memory is O(n + deposits),
+ * 		which keeps large data centers sub-quadratic.</li>
+ * </ul>
+ * {@link Mode#AUTO} picks dense storage up to {@link #AUTO_DENSE_LIMIT} VMs and low rank storage above it.
+ */
+public abstract class PheromoneMatrix {
+
+	public enum Mode {
+		DENSE,
+		LOW_RANK,
+		AUTO
+	}
+
+	/** Largest number of VMs for which {@link Mode#AUTO} uses dense storage */
+	public static final int AUTO_DENSE_LIMIT = 512;
+
+	/** Number of rows (and columns) */
+	protected int n;
+
+	/**
+	 * Creates an empty matrix.
+	 *
+	 * @param mode storage mode
+	 * @param expectedSize the expected number of VMs, used to resolve {@link Mode#AUTO}
+	 * @return
+	 */
+	public static PheromoneMatrix create(Mode mode, int expectedSize){
+		if (mode == Mode.AUTO){
+			mode = (expectedSize <= AUTO_DENSE_LIMIT) ? Mode.DENSE : Mode.LOW_RANK;
+		}
+
+		if (mode == Mode.DENSE){
+			return new Dense();
+		} else {
+			return new LowRank();
+		}
+	}
+
+	/**
+	 * Parses a mode name as used in configuration. Accepts "dense", "lowrank" / "low_rank" and "auto",
+	 * ignoring case.
+	 *
+	 * @param name
+	 * @param defaultMode returned if the name is null or not recognised
+	 * @return
+	 */
+	public static Mode parseMode(String name, Mode defaultMode){
+		if (name == null){
+			return defaultMode;
+		}
+
+		String s = name.trim().toUpperCase().replace("-", "_");
+		if (s.equals("LOWRANK")){
+			s = "LOW_RANK";
+		}
+		for (Mode m : Mode.values()){
+			if (m.name().equals(s)){
+				return m;
+			}
+		}
+
+		return defaultMode;
+	}
+
+	/**
+	 * @return the number of rows (and columns)
+	 */
+	public int size(){
+		return n;
+	}
+
+	/**
+	 * Grows the matrix to <code>newSize</code> rows and columns. Every cell of a new column j
+	 * is set to <code>initialValues[j]</code>. New rows of existing columns take the pheromone
+	 * that column currently carries on all of its trails.
+	 *
+	 * @param newSize
+	 * @param initialValues initial pheromone of each new column, indexed by VM id
+	 */
+	public abstract void grow(int newSize, double[] initialValues);
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return pheromone on the trail from i to j
+	 */
+	public abstract double get(int i, int j);
+
+	/**
+	 * @param j
+	 * @return sum of column j, the total pheromone leading to VM j
+	 */
+	public abstract double columnTotal(int j);
+
+	/**
+	 * Sets every cell of column j to <code>cell * keep + deposit</code>.
+	 *
+	 * @param j
+	 * @param keep fraction of the existing pheromone kept
+	 * @param deposit pheromone added to each trail
+	 */
+	public abstract void reinforceColumn(int j, double keep, double deposit);
+
+	/**
+	 * Adds pheromone to a single trail.
+	 *
+	 * @param i
+	 * @param j
+	 * @param amount
+	 */
+	public abstract void deposit(int i, int j, double amount);
+
+	/**
+	 * Multiplies every cell by <code>factor</code>, not letting any fall below <code>floor</code>.
+	 * In low rank mode the floor is applied to the shared value of each column.
+	 *
+	 * @param factor
+	 * @param floor
+	 */
+	public abstract void evaporate(double factor, double floor);
+
+	/** Flat row-major storage */
+	static class Dense extends PheromoneMatrix {
+		private double[] cells = new double[0];
+		private double[] totals = new double[0];
+
+		@Override
+		public void grow(int newSize, double[] initialValues){
+			if (newSize <= n){
+				return;
+			}
+
+			double[] newCells = new double[newSize * newSize];
+			for (int i = 0; i < newSize; i++){
+				int srcRow = Math.min(i, n - 1);
+				for (int j = 0; j < newSize; j++){
+					newCells[i * newSize + j] = (j < n) ? cells[srcRow * n + j] : initialValues[j];
+				}
+			}
+
+			cells = newCells;
+			totals = new double[newSize];
+			n = newSize;
+			for (int j = 0; j < n; j++){
+				recomputeTotal(j);
+			}
+		}
+
+		private void recomputeTotal(int j){
+			double sum = 0.0;
+			for (int idx = j; idx < cells.length; idx += n){
+				sum += cells[idx];
+			}
+			totals[j] = sum;
+		}
+
+		@Override
+		public double get(int i, int j){
+			return cells[i * n + j];
+		}
+
+		@Override
+		public double columnTotal(int j){
+			return totals[j];
+		}
+
+		@Override
+		public void reinforceColumn(int j, double keep, double deposit){
+			double sum = 0.0;
+			for (int idx = j; idx < cells.length; idx += n){
+				double v = cells[idx] * keep + deposit;
+				cells[idx] = v;
+				sum += v;
+			}
+			totals[j] = sum;
+		}
+
+		@Override
+		public void deposit(int i, int j, double amount){
+			cells[i * n + j] += amount;
+			totals[j] += amount;
+		}
+
+		@Override
+		public void evaporate(double factor, double floor){
+			for (int idx = 0; idx < cells.length; idx++){
+				double v = cells[idx] * factor;
+				cells[idx] = (v < floor) ? floor : v;
+			}
+			for (int j = 0; j < n; j++){
+				recomputeTotal(j);
+			}
+		}
+	}
+
+	/**
+	 * Column j is <code>shared[j]</code> on every row plus <code>scale[j] * raw</code> on the rows that
+	 * received a deposit. Scaling a column only touches <code>shared</code> and <code>scale</code>.
+	 */
+	static class LowRank extends PheromoneMatrix {
+		private static final int INITIAL_DEPOSIT_SLOTS = 2;
+		private static final double MIN_SCALE = 1e-200;
+
+		private double[] shared = new double[0];
+		private double[] scale = new double[0];
+		private double[] rawSum = new double[0];
+		private int[][] depositRows = new int[0][];
+		private double[][] depositRaw = new double[0][];
+		private int[] depositCount = new int[0];
+
+		@Override
+		public void grow(int newSize, double[] initialValues){
+			if (newSize <= n){
+				return;
+			}
+
+			shared = Arrays.copyOf(shared, newSize);
+			scale = Arrays.copyOf(scale, newSize);
+			rawSum = Arrays.copyOf(rawSum, newSize);
+			depositRows = Arrays.copyOf(depositRows, newSize);
+			depositRaw = Arrays.copyOf(depositRaw, newSize);
+			depositCount = Arrays.copyOf(depositCount, newSize);
+			for (int j = n; j < newSize; j++){
+				shared[j] = initialValues[j];
+				scale[j] = 1.0;
+			}
+			n = newSize;
+		}
+
+		private int findDeposit(int i, int j){
+			int[] rows = depositRows[j];
+			for (int k = 0; k < depositCount[j]; k++){
+				if (rows[k] == i){
+					return k;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public double get(int i, int j){
+			int k = findDeposit(i, j);
+			return (k == -1) ? shared[j] : shared[j] + scale[j] * depositRaw[j][k];
+		}
+
+		@Override
+		public double columnTotal(int j){
+			return n * shared[j] + scale[j] * rawSum[j];
+		}
+
+		@Override
+		public void reinforceColumn(int j, double keep, double deposit){
+			shared[j] = shared[j] * keep + deposit;
+			scale[j] *= keep;
+			if (scale[j] < MIN_SCALE){
+				normalize(j);
+			}
+		}
+
+		/** Folds the column scale into the raw deposits before it underflows */
+		private void normalize(int j){
+			double s = scale[j];
+			for (int k = 0; k < depositCount[j]; k++){
+				depositRaw[j][k] *= s;
+			}
+			rawSum[j] *= s;
+			scale[j] = 1.0;
+		}
+
+		@Override
+		public void deposit(int i, int j, double amount){
+			double raw = amount / scale[j];
+			int k = findDeposit(i, j);
+			if (k == -1){
+				k = depositCount[j];
+				if (depositRows[j] == null){
+					depositRows[j] = new int[INITIAL_DEPOSIT_SLOTS];
+					depositRaw[j] = new double[INITIAL_DEPOSIT_SLOTS];
+				} else if (k == depositRows[j].length){
+					depositRows[j] = Arrays.copyOf(depositRows[j], k * 2);
+					depositRaw[j] = Arrays.copyOf(depositRaw[j], k * 2);
+				}
+				depositRows[j][k] = i;
+				depositRaw[j][k] = 0.0;
+				depositCount[j]++;
+			}
+			depositRaw[j][k] += raw;
+			rawSum[j] += raw;
+		}
+
+		@Override
+		public void evaporate(double factor, double floor){
+			for (int j = 0; j < n; j++){
+				double v = shared[j] * factor;
+				shared[j] = (v < floor) ? floor : v;
+				scale[j] *= factor;
+				if (scale[j] < MIN_SCALE){
+					normalize(j);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package cloudsim.ext.datacenter;
+
+import cloudsim.ext.event.VmAllocationListener;
+
+/**
+ * Power of two choices load balancer.
+ * 
+ * For each request two distinct VMs are sampled at random and the one with fewer cloudlets 
+ * in progress is selected. The number of cloudlets in progress is tracked from the allocation 
+ * and finish events, so each selection is O(1) regardless of the number of VMs.
+ */
+public class PowerOfTwoChoicesVmLoadBalancer extends VmLoadBalancer implements VmAllocationListener {
+	
+	private DatacenterController dcbLocal;
+	
+	public PowerOfTwoChoicesVmLoadBalancer(DatacenterController dcb) {
+		super(true);
+		dcbLocal = dcb;
+		
+		dcb.addVmAllocationListener(this);
+	}
+	
+	@Override
+	public int getNextAvailableVm() {
+		int vmCount = dcbLocal.vmlist.size();
+		int selectedVmId;
+		
+		if (vmCount <= 1) {
+			selectedVmId = 0;
+		} else {
+			int first = random.nextInt(vmCount);
+			int second = random.nextInt(vmCount - 1);
+			if (second >= first) {
+				second++;
+			}
+			
+			// On a tie keep the first sample, which is already a uniform random choice
+			if (vmAllocationCounts.getLive(second) < vmAllocationCounts.getLive(first)) {
+				selectedVmId = second;
+			} else {
+				selectedVmId = first;
+			}
+		}
+		
+		allocatedVm(selectedVmId);
+		if (logAllocations) {
+			System.out.println("Power of two: allocated to VM " + selectedVmId);
+		}
+		
+		return selectedVmId;
+	}
+	
+	public void onAllocated(int vmId) {
+		vmAllocationCounts.incrementLive(vmId);
+	}
+	
+	public void onFinished(int vmId) {
+		vmAllocationCounts.decrementLive(vmId);
+	}
+}
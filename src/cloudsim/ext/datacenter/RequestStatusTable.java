@@ -0,0 +1,241 @@
+package cloudsim.ext.datacenter;
+
+/**
+ * Progress of the requests a {@link DatacenterController} is processing, keyed on the request 
+ * (parent cloudlet) id. For each request the table holds the total number of requests, the number 
+ * completed so far (processed or dropped), the number dropped and the start time.
+ * 
+ * The table uses open addressing with linear probing over parallel primitive arrays, so entries are
+ * updated in place and nothing is allocated per request. Removal shifts the following entries back 
+ * instead of leaving tombstones, which keeps probe sequences short as requests come and go. 
+ * Occupancy and probe length statistics are kept for tuning.
+ */
+public class RequestStatusTable {
+	
+	private static final int INITIAL_CAPACITY = 64;
+	/** The table grows when more than this fraction of the slots are used */
+	private static final double MAX_LOAD = 0.5;
+	
+	private int[] keys;
+	private boolean[] used;
+	private long[] totals;
+	private long[] completed;
+	private long[] dropped;
+	private long[] startTimes;
+	private int mask;
+	private int size;
+	private int growThreshold;
+	
+	private int highWaterMark;
+	private long lookups;
+	private long probes;
+	private int maxProbeLength;
+	
+	/** No args contructor */
+	public RequestStatusTable(){
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		used = new boolean[capacity];
+		totals = new long[capacity];
+		completed = new long[capacity];
+		dropped = new long[capacity];
+		startTimes = new long[capacity];
+		mask = capacity - 1;
+		growThreshold = (int) (capacity * MAX_LOAD);
+	}
+	
+	private int home(int key){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	/**
+	 * @param key
+	 * @return the slot holding the key, or -1 if it is not in the table
+	 */
+	public int find(int key){
+		int slot = home(key);
+		int probeLength = 1;
+		while (used[slot] && keys[slot] != key){
+			slot = (slot + 1) & mask;
+			probeLength++;
+		}
+		recordProbe(probeLength);
+		
+		return used[slot] ? slot : -1;
+	}
+	
+	/**
+	 * Adds a request, replacing any existing entry with the same key. The dropped count starts at 0.
+	 * 
+	 * @param key
+	 * @param total
+	 * @param completedCount
+	 * @param startTime
+	 * @return the slot of the entry, valid until the next put or remove
+	 */
+	public int put(int key, long total, long completedCount, long startTime){
+		if (size >= growThreshold){
+			rehash(keys.length * 2);
+		}
+		
+		int slot = home(key);
+		int probeLength = 1;
+		while (used[slot] && keys[slot] != key){
+			slot = (slot + 1) & mask;
+			probeLength++;
+		}
+		recordProbe(probeLength);
+		
+		if (!used[slot]){
+			used[slot] = true;
+			keys[slot] = key;
+			size++;
+			if (size > highWaterMark){
+				highWaterMark = size;
+			}
+		}
+		totals[slot] = total;
+		completed[slot] = completedCount;
+		dropped[slot] = 0;
+		startTimes[slot] = startTime;
+		
+		return slot;
+	}
+	
+	public long getTotal(int slot){
+		return totals[slot];
+	}
+	
+	public long getCompleted(int slot){
+		return completed[slot];
+	}
+	
+	public void setCompleted(int slot, long completedCount){
+		completed[slot] = completedCount;
+	}
+	
+	public long getDropped(int slot){
+		return dropped[slot];
+	}
+	
+	public void setDropped(int slot, long droppedCount){
+		dropped[slot] = droppedCount;
+	}
+	
+	public long getStartTime(int slot){
+		return startTimes[slot];
+	}
+	
+	/**
+	 * Removes the entry in a slot returned by {@link #find(int)} or {@link #put(int, long, long, long)}.
+	 * 
+	 * @param slot
+	 */
+	public void remove(int slot){
+		used[slot] = false;
+		size--;
+		
+		// Shift back any following entries that would no longer be reachable from their home slot
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (used[next]){
+			int h = home(keys[next]);
+			if (((next - h) & mask) >= ((next - gap) & mask)){
+				keys[gap] = keys[next];
+				totals[gap] = totals[next];
+				completed[gap] = completed[next];
+				dropped[gap] = dropped[next];
+				startTimes[gap] = startTimes[next];
+				used[gap] = true;
+				used[next] = false;
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+	
+	private void rehash(int newCapacity){
+		int[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		long[] oldTotals = totals;
+		long[] oldCompleted = completed;
+		long[] oldDropped = dropped;
+		long[] oldStartTimes = startTimes;
+		
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++){
+			if (oldUsed[i]){
+				int slot = home(oldKeys[i]);
+				while (used[slot]){
+					slot = (slot + 1) & mask;
+				}
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				totals[slot] = oldTotals[i];
+				completed[slot] = oldCompleted[i];
+				dropped[slot] = oldDropped[i];
+				startTimes[slot] = oldStartTimes[i];
+			}
+		}
+	}
+	
+	private void recordProbe(int probeLength){
+		lookups++;
+		probes += probeLength;
+		if (probeLength > maxProbeLength){
+			maxProbeLength = probeLength;
+		}
+	}
+	
+	/**
+	 * @return the number of requests in the table
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * @return the number of slots
+	 */
+	public int getCapacity(){
+		return keys.length;
+	}
+	
+	/**
+	 * @return the fraction of slots in use
+	 */
+	public double getOccupancy(){
+		return (double) size / keys.length;
+	}
+	
+	/**
+	 * @return the largest number of requests held at the same time
+	 */
+	public int getHighWaterMark(){
+		return highWaterMark;
+	}
+	
+	/**
+	 * @return the average number of slots examined per lookup or insert
+	 */
+	public double getAverageProbeLength(){
+		return (lookups == 0) ? 0.0 : (double) probes / lookups;
+	}
+	
+	/**
+	 * @return the largest number of slots examined by a single lookup or insert
+	 */
+	public int getMaxProbeLength(){
+		return maxProbeLength;
+	}
+	
+	@Override
+	public String toString(){
+		return String.format("requests=%d, capacity=%d, occupancy=%.2f, peak=%d, avg probe=%.2f, max probe=%d", 
+							 size, keys.length, getOccupancy(), highWaterMark, getAverageProbeLength(), maxProbeLength);
+	}
+}
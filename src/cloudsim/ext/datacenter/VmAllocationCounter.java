@@ -0,0 +1,222 @@
+package cloudsim.ext.datacenter;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Per VM allocation counters backed by primitive arrays and indexed by VM id.
+ *
+ * Keeps the cumulative number of allocations made to each VM and, optionally, the live
+ * number of cloudlets currently allocated to each VM (incremented on allocation and
+ * decremented when the VM finishes a cloudlet). The arrays grow on demand as new VMs
+ * are created, so updating a counter never boxes or allocates.
+ *
+ * A {@link Map} view of the cumulative counts is available through {@link #asMap()}
+ * for result reporting.
+ */
+public class VmAllocationCounter {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] allocations;
+	private int[] live;
+	/** One more than the highest VM id seen so far */
+	private int vmCount;
+	private Map<Integer, Integer> mapView;
+
+	/**
+	 * @param trackLive whether the live load counter should be maintained as well
+	 */
+	public VmAllocationCounter(boolean trackLive){
+		allocations = new int[DEFAULT_CAPACITY];
+		if (trackLive){
+			live = new int[DEFAULT_CAPACITY];
+		}
+	}
+
+	/**
+	 * Makes sure there is space for VM ids up to <code>vmCount - 1</code>.
+	 *
+	 * @param vmCount
+	 */
+	public void ensureCapacity(int vmCount){
+		if (vmCount > allocations.length){
+			int newCapacity = Math.max(vmCount, allocations.length * 2);
+			allocations = Arrays.copyOf(allocations, newCapacity);
+			if (live != null){
+				live = Arrays.copyOf(live, newCapacity);
+			}
+		}
+	}
+
+	private void touch(int vmId){
+		if (vmId >= vmCount){
+			ensureCapacity(vmId + 1);
+			vmCount = vmId + 1;
+		}
+	}
+
+	/**
+	 * Records one more allocation to the given VM. Negative ids, used by the load balancers
+	 * for "no VM available", are ignored.
+	 *
+	 * @param vmId
+	 * @return the new cumulative count
+	 */
+	public int incrementAllocations(int vmId){
+		if (vmId < 0){
+			return 0;
+		}
+		touch(vmId);
+		return ++allocations[vmId];
+	}
+
+	/**
+	 * @param vmId
+	 * @return the cumulative number of allocations made to the VM
+	 */
+	public int getAllocations(int vmId){
+		return (vmId >= 0 && vmId < vmCount) ? allocations[vmId] : 0;
+	}
+
+	/**
+	 * @return whether the live load counter is maintained
+	 */
+	public boolean isTrackingLive(){
+		return live != null;
+	}
+
+	/**
+	 * Records a cloudlet being allocated to the given VM. Has no effect if the live counter
+	 * is not tracked or the id is negative.
+	 *
+	 * @param vmId
+	 * @return the new live count
+	 */
+	public int incrementLive(int vmId){
+		if (live == null || vmId < 0){
+			return 0;
+		}
+		touch(vmId);
+		return ++live[vmId];
+	}
+
+	/**
+	 * Records the given VM finishing a cloudlet. The count never goes below zero, and
+	 * negative ids are ignored.
+	 *
+	 * @param vmId
+	 * @return the new live count
+	 */
+	public int decrementLive(int vmId){
+		if (live == null || vmId < 0){
+			return 0;
+		}
+		touch(vmId);
+		if (live[vmId] > 0){
+			live[vmId]--;
+		}
+		return live[vmId];
+	}
+
+	/**
+	 * @param vmId
+	 * @return the number of cloudlets currently allocated to the VM
+	 */
+	public int getLive(int vmId){
+		return (live != null && vmId >= 0 && vmId < vmCount) ? live[vmId] : 0;
+	}
+
+	/**
+	 * @return one more than the highest VM id recorded so far
+	 */
+	public int size(){
+		return vmCount;
+	}
+
+	/**
+	 * Returns a read only {@link Map} view of the cumulative counts, containing only the VMs
+	 * that have been allocated at least once. The view is backed by this counter.
+	 *
+	 * @return
+	 */
+	public Map<Integer, Integer> asMap(){
+		if (mapView == null){
+			mapView = new AllocationMapView();
+		}
+
+		return mapView;
+	}
+
+	private class AllocationMapView extends AbstractMap<Integer, Integer> {
+
+		@Override
+		public Integer get(Object key){
+			if (!(key instanceof Integer)){
+				return null;
+			}
+			int vmId = (Integer) key;
+			if (vmId < 0 || getAllocations(vmId) == 0){
+				return null;
+			}
+			return allocations[vmId];
+		}
+
+		@Override
+		public boolean containsKey(Object key){
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Integer>> entrySet(){
+			return new AbstractSet<Map.Entry<Integer, Integer>>(){
+
+				@Override
+				public Iterator<Map.Entry<Integer, Integer>> iterator(){
+					return new Iterator<Map.Entry<Integer, Integer>>(){
+						private int next = advance(0);
+
+						private int advance(int from){
+							while (from < vmCount && allocations[from] == 0){
+								from++;
+							}
+							return from;
+						}
+
+						public boolean hasNext(){
+							return next < vmCount;
+						}
+
+						public Map.Entry<Integer, Integer> next(){
+							if (!hasNext()){
+								throw new NoSuchElementException();
+							}
+							int vmId = next;
+							next = advance(next + 1);
+							return new AbstractMap.SimpleImmutableEntry<Integer, Integer>(vmId, allocations[vmId]);
+						}
+
+						public void remove(){
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size(){
+					int count = 0;
+					for (int i = 0; i < vmCount; i++){
+						if (allocations[i] > 0){
+							count++;
+						}
+					}
+					return count;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cloudsim.DataCenter;
+import cloudsim.Host;
+import cloudsim.VirtualMachine;
+
+/**
+ * Provides the effective processing capacity of each VM of a {@link DatacenterController}, 
+ * i.e. the total MIPS share its {@link Host}'s allocation policy gives it. 
+ * 
+ * Capacities are cached in a primitive array and refreshed by the controller when a VM is created
+ * or migrated. Since a new VM changes the share of the VMs already on the same host, all VMs on
+ * that host are refreshed. Until a VM has been placed on a host (or if the data center is not known)
+ * its capacity is estimated as 1000 MIPS per CPU.
+ */
+public class VmCapacityOracle {
+	private static final double DEFAULT_MIPS_PER_CPU = 1000.0;
+	
+	private DatacenterController controller;
+	private DataCenter dataCenter;
+	/** Effective MIPS of each VM, 0 if not known yet */
+	private double[] mips = new double[0];
+	
+	/**
+	 * @param controller the controller owning the VMs
+	 */
+	public VmCapacityOracle(DatacenterController controller){
+		this.controller = controller;
+	}
+	
+	/**
+	 * @param dataCenter the data center hosting the VMs, may be null
+	 */
+	public void setDataCenter(DataCenter dataCenter){
+		this.dataCenter = dataCenter;
+	}
+	
+	/**
+	 * @param vmId
+	 * @return the effective MIPS of the VM
+	 */
+	public double getMips(int vmId){
+		if (vmId < mips.length && mips[vmId] > 0){
+			return mips[vmId];
+		}
+		
+		return estimateMips(vmId);
+	}
+	
+	private double estimateMips(int vmId){
+		if (vmId < 0 || vmId >= controller.vmlist.size()){
+			return DEFAULT_MIPS_PER_CPU;
+		}
+		
+		int cpus = ((VirtualMachine) controller.vmlist.get(vmId)).getCpus();
+		return cpus > 0 ? cpus * DEFAULT_MIPS_PER_CPU : DEFAULT_MIPS_PER_CPU;
+	}
+	
+	/**
+	 * Re-reads the MIPS share of every VM on the host of the given VM. Used when a VM is created.
+	 * 
+	 * @param vmId
+	 * @param listener notified of each VM whose capacity changed, may be null
+	 */
+	public void refreshHostOf(int vmId, VmLoadBalancer listener){
+		if (dataCenter == null){
+			return;
+		}
+		
+		int userId = controller.get_id();
+		Host host = dataCenter.getVMProvisioner().getHost(vmId, userId);
+		if (host == null){
+			return;
+		}
+		
+		List<?> vms = host.getVMs();
+		for (int i = 0; i < vms.size(); i++){
+			VirtualMachine vm = (VirtualMachine) vms.get(i);
+			if (vm.getUserId() == userId){
+				update(host, vm.getVmId(), listener);
+			}
+		}
+	}
+	
+	/**
+	 * Re-reads the MIPS share of every VM. Used when a VM migrates, as that changes the shares on
+	 * both the source and the destination host.
+	 * 
+	 * @param listener notified of each VM whose capacity changed, may be null
+	 */
+	public void refreshAll(VmLoadBalancer listener){
+		if (dataCenter == null){
+			return;
+		}
+		
+		int userId = controller.get_id();
+		for (int vmId = 0; vmId < controller.vmlist.size(); vmId++){
+			Host host = dataCenter.getVMProvisioner().getHost(vmId, userId);
+			if (host != null && host.getVM(userId, vmId) != null){
+				update(host, vmId, listener);
+			}
+		}
+	}
+	
+	private void update(Host host, int vmId, VmLoadBalancer listener){
+		double[] share = host.getMIPSShare(vmId, controller.get_id());
+		double total = 0.0;
+		for (double s : share){
+			total += s;
+		}
+		
+		if (vmId >= mips.length){
+			mips = Arrays.copyOf(mips, Math.max(vmId + 1, mips.length * 2));
+		}
+		if (mips[vmId] != total){
+			mips[vmId] = total;
+			if (listener != null){
+				listener.vmCapacityChanged(vmId);
+			}
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package cloudsim.ext.datacenter;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * This is the base class defining the behaviour of a Virtual Machine load balancer
@@ -15,12 +15,35 @@ import java.util.Map;
  * @author Bhathiya Wickremasinghe
  */
 abstract public class VmLoadBalancer {
-	/** Holds the count of allocations for each VM */
-	protected Map<Integer, Integer> vmAllocationCounts;
+	/** Holds the count of allocations for each VM, and optionally the live load of each VM */
+	protected VmAllocationCounter vmAllocationCounts;
+	
+	/** 
+	 * Whether implementing classes should print each allocation. Off by default, enable with
+	 * the system property <code>cloudsim.ext.lb.log=true</code>.
+	 */
+	protected boolean logAllocations = Boolean.getBoolean("cloudsim.ext.lb.log");
+	
+	/** 
+	 * Source of randomness for policies that need it. Seeded from the system property
+	 * <code>cloudsim.ext.lb.seed</code> if set, so runs can be reproduced. The load balancers 
+	 * created by {@link VmLoadBalancerRegistry} get a seed derived from it and the data center,
+	 * see {@link #deriveSeed(long, int)}.
+	 */
+	protected Random random = createDefaultRandom();
 	
 	/** No args contructor */
 	public VmLoadBalancer(){
-		vmAllocationCounts = new HashMap<Integer, Integer>();
+		this(false);
+	}
+	
+	/**
+	 * @param trackLiveLoad whether the live load counter of {@link #vmAllocationCounts} should be
+	 * 			maintained. Implementing classes using it should call <code>vmAllocationCounts.incrementLive()</code>
+	 * 			and <code>vmAllocationCounts.decrementLive()</code> from the allocation and finish events.
+	 */
+	protected VmLoadBalancer(boolean trackLiveLoad){
+		vmAllocationCounts = new VmAllocationCounter(trackLiveLoad);
 	}
 	
 	/**
@@ -39,12 +62,27 @@ abstract public class VmLoadBalancer {
 	 * @param currVm
 	 */
 	protected void allocatedVm(int currVm){
+		vmAllocationCounts.incrementAllocations(currVm);
+	}
+	
+	/**
+	 * Called by the {@link DatacenterController} when the number of VMs grows, so the
+	 * statistics can reserve space up front.
+	 * 
+	 * @param vmCount the new number of VMs
+	 */
+	public void ensureVmCapacity(int vmCount){
+		vmAllocationCounts.ensureCapacity(vmCount);
+	}
 		
-		Integer currCount = vmAllocationCounts.get(currVm);
-		if (currCount == null){
-			currCount = 0;
-		}
-		vmAllocationCounts.put(currVm, currCount + 1);		
+	/**
+	 * Called by the {@link DatacenterController} when the effective capacity of a VM, as reported
+	 * by its {@link VmCapacityOracle}, changes. Capacity aware implementations should override this
+	 * to update any values derived from it.
+	 * 
+	 * @param vmId
+	 */
+	public void vmCapacityChanged(int vmId){
 	}
 		
 	/**
@@ -52,6 +90,40 @@ abstract public class VmLoadBalancer {
 	 * @return
 	 */
 	public Map<Integer, Integer> getVmAllocationCounts(){
-		return vmAllocationCounts;
+		return vmAllocationCounts.asMap();
+	}
+	
+	/**
+	 * @param logAllocations whether each allocation should be printed to the console
+	 */
+	public void setLogAllocations(boolean logAllocations){
+		this.logAllocations = logAllocations;
+	}
+	
+	/**
+	 * Replaces the random number generator used by this load balancer, for example with one
+	 * created from a fixed seed for reproducible runs.
+	 * 
+	 * @param random
+	 */
+	public void setRandom(Random random){
+		this.random = random;
+	}
+	
+	/**
+	 * Derives the seed of one data center's load balancer from the seed of the simulation, so the 
+	 * load balancers of different data centers do not draw the same random sequence.
+	 * 
+	 * @param baseSeed seed of the simulation
+	 * @param dcId entity id of the data center controller
+	 * @return
+	 */
+	public static long deriveSeed(long baseSeed, int dcId){
+		return baseSeed ^ (dcId * 0x9E3779B97F4A7C15L);
+	}
+	
+	private static Random createDefaultRandom(){
+		Long seed = Long.getLong("cloudsim.ext.lb.seed");
+		return (seed != null) ? new Random(seed) : new Random();
 	}
 }
\ No newline at end of file
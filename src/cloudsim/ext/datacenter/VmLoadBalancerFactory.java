@@ -0,0 +1,35 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Map;
+
+/**
+ * Service provider interface for creating {@link VmLoadBalancer}s. Each factory provides a single
+ * load balancing policy, identified by its name.
+ * 
+ * Additional policies can be plugged in without changing the simulator by implementing this interface
+ * and listing the implementing class in a <code>META-INF/services/cloudsim.ext.datacenter.VmLoadBalancerFactory</code>
+ * file on the classpath. The implementing class must have a public no args constructor.
+ * See {@link VmLoadBalancerRegistry}.
+ */
+public interface VmLoadBalancerFactory {
+	
+	/** Property holding a long seed for the load balancer's random number generator */
+	final String PROP_SEED = "seed";
+	/** Property enabling console output of each allocation, "true" or "false" */
+	final String PROP_LOG_ALLOCATIONS = "log";
+
+	/**
+	 * @return the name of the policy, as shown in the GUI and passed to 
+	 * 			{@link DatacenterController}
+	 */
+	String getPolicyName();
+	
+	/**
+	 * Creates a new load balancer for a data center.
+	 * 
+	 * @param controller the controller of the data center the load balancer will serve
+	 * @param properties policy specific configuration, never null
+	 * @return
+	 */
+	VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties);
+}
@@ -0,0 +1,217 @@
+package cloudsim.ext.datacenter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import cloudsim.ext.Constants;
+
+/**
+ * Looks up the available {@link VmLoadBalancerFactory}s. The built in policies are always
+ * available, additional ones are discovered with {@link ServiceLoader} the first time the 
+ * registry is used. If two factories share a policy name, the first one found is used.
+ */
+public final class VmLoadBalancerRegistry {
+	
+	/** Property selecting the pheromone matrix storage of the ant colony policy */
+	public static final String PROP_ACO_MATRIX = "aco.matrix";
+	/** Property holding the cutoff of the honey bee policy */
+	public static final String PROP_HBF_CUTOFF = "hbf.cutoff";
+	/** 
+	 * Property switching the Min-Min and Max-Min policies to batch scheduling over expected completion
+	 * times. Defaults to the system property <code>cloudsim.ext.lb.batch</code>.
+	 */
+	public static final String PROP_BATCH = "batch";
+	
+	private static Map<String, VmLoadBalancerFactory> factories;
+	
+	private VmLoadBalancerRegistry(){
+	}
+	
+	/**
+	 * @return the names of all available policies, built in policies first
+	 */
+	public static synchronized List<String> getPolicyNames(){
+		load();
+		return Collections.unmodifiableList(new ArrayList<String>(factories.keySet()));
+	}
+	
+	/**
+	 * @param policyName
+	 * @return the factory for the policy, or null if there is none
+	 */
+	public static synchronized VmLoadBalancerFactory getFactory(String policyName){
+		load();
+		return factories.get(policyName);
+	}
+	
+	/**
+	 * Registers a factory programmatically. Replaces any factory with the same policy name.
+	 * 
+	 * @param factory
+	 */
+	public static synchronized void register(VmLoadBalancerFactory factory){
+		load();
+		factories.put(factory.getPolicyName(), factory);
+	}
+	
+	/**
+	 * Creates a load balancer for the named policy.
+	 * 
+	 * @param policyName
+	 * @param controller
+	 * @param properties may be null
+	 * @return
+	 * @throws IllegalArgumentException if there is no such policy
+	 */
+	public static VmLoadBalancer createLoadBalancer(String policyName, 
+													DatacenterController controller, 
+													Map<String, String> properties){
+		VmLoadBalancerFactory factory = getFactory(policyName);
+		if (factory == null){
+			throw new IllegalArgumentException("Unknown load balancing policy '" + policyName 
+											   + "'. Available policies: " + getPolicyNames());
+		}
+		
+		if (properties == null){
+			properties = Collections.emptyMap();
+		}
+		VmLoadBalancer loadBalancer = factory.createLoadBalancer(controller, properties);
+		applyCommonProperties(loadBalancer, controller, properties);
+		
+		return loadBalancer;
+	}
+	
+	/**
+	 * Applies the properties understood by every {@link VmLoadBalancer}. The seed, from the properties
+	 * or the system property <code>cloudsim.ext.lb.seed</code>, is combined with the id of the 
+	 * controller so each data center gets its own random sequence.
+	 */
+	private static void applyCommonProperties(VmLoadBalancer loadBalancer, 
+											  DatacenterController controller, 
+											  Map<String, String> properties){
+		String seedProperty = properties.get(VmLoadBalancerFactory.PROP_SEED);
+		Long seed = (seedProperty != null) ? Long.valueOf(seedProperty.trim()) : Long.getLong("cloudsim.ext.lb.seed");
+		if (seed != null){
+			int dcId = (controller != null) ? controller.get_id() : 0;
+			loadBalancer.setRandom(new Random(VmLoadBalancer.deriveSeed(seed, dcId)));
+		}
+		
+		String log = properties.get(VmLoadBalancerFactory.PROP_LOG_ALLOCATIONS);
+		if (log != null){
+			loadBalancer.setLogAllocations(Boolean.parseBoolean(log.trim()));
+		}
+	}
+	
+	private static boolean isBatchMode(Map<String, String> properties){
+		String batch = properties.get(PROP_BATCH);
+		if (batch != null){
+			return Boolean.parseBoolean(batch.trim());
+		}
+		return Boolean.getBoolean("cloudsim.ext.lb.batch");
+	}
+	
+	private static void load(){
+		if (factories != null){
+			return;
+		}
+		
+		factories = new LinkedHashMap<String, VmLoadBalancerFactory>();
+		for (VmLoadBalancerFactory f : builtInFactories()){
+			factories.put(f.getPolicyName(), f);
+		}
+		
+		Iterator<VmLoadBalancerFactory> it = ServiceLoader.load(VmLoadBalancerFactory.class).iterator();
+		while (true){
+			try {
+				if (!it.hasNext()){
+					break;
+				}
+				VmLoadBalancerFactory f = it.next();
+				if (!factories.containsKey(f.getPolicyName())){
+					factories.put(f.getPolicyName(), f);
+				}
+			} catch (ServiceConfigurationError e){
+				System.out.println("Could not load load balancer factory: " + e.getMessage());
+			}
+		}
+	}
+	
+	private static List<VmLoadBalancerFactory> builtInFactories(){
+		List<VmLoadBalancerFactory> list = new ArrayList<VmLoadBalancerFactory>();
+		
+		list.add(new VmLoadBalancerFactory(){
+			public String getPolicyName(){
+				return Constants.LOAD_BALANCE_ANT_COLONY;
+			}
+			
+			public VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties){
+				AntColonyVmLoadBalancer lb = new AntColonyVmLoadBalancer(controller);
+				String matrix = properties.get(PROP_ACO_MATRIX);
+				if (matrix != null){
+					lb.setMatrixMode(PheromoneMatrix.parseMode(matrix, PheromoneMatrix.Mode.AUTO));
+				}
+				return lb;
+			}
+		});
+		
+		list.add(new VmLoadBalancerFactory(){
+			public String getPolicyName(){
+				return Constants.LOAD_BALANCE_HONEY_COLONY;
+			}
+			
+			public VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties){
+				honeyBee lb = new honeyBee(controller);
+				String cutoff = properties.get(PROP_HBF_CUTOFF);
+				if (cutoff != null){
+					lb.setCutoff(Integer.parseInt(cutoff.trim()));
+				}
+				return lb;
+			}
+		});
+		
+		list.add(new VmLoadBalancerFactory(){
+			public String getPolicyName(){
+				return Constants.LOAD_BALANCE_MIN_MIN;
+			}
+			
+			public VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties){
+				if (isBatchMode(properties)){
+					return new EtcBatchVmLoadBalancer(controller, false);
+				}
+				return new MinMinVmLoadBalancer(controller);
+			}
+		});
+		
+		list.add(new VmLoadBalancerFactory(){
+			public String getPolicyName(){
+				return Constants.LOAD_BALANCE_MAX_MIN;
+			}
+			
+			public VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties){
+				if (isBatchMode(properties)){
+					return new EtcBatchVmLoadBalancer(controller, true);
+				}
+				return new MaxMinVmLoadBalancer(controller);
+			}
+		});
+		
+		list.add(new VmLoadBalancerFactory(){
+			public String getPolicyName(){
+				return Constants.LOAD_BALANCE_POWER_OF_TWO;
+			}
+			
+			public VmLoadBalancer createLoadBalancer(DatacenterController controller, Map<String, String> properties){
+				return new PowerOfTwoChoicesVmLoadBalancer(controller);
+			}
+		});
+		
+		return list;
+	}
+}
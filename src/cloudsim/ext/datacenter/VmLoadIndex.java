@@ -0,0 +1,146 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+
+/**
+ * An indexed binary min-heap over VM ids, keyed on a primitive <code>double</code> load value.
+ *
+ * Load balancers use this to find the least loaded VM without scanning the whole VM list.
+ * The minimum is available in constant time and a key change costs O(log n). Ties are broken
+ * in favour of the lower VM id, which matches the behaviour of a linear scan that keeps the
+ * first minimum it sees. No objects are allocated after the index has grown to its final size.
+ */
+public class VmLoadIndex {
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/** Heap slot -> VM id */
+	private int[] heap;
+	/** VM id -> heap slot */
+	private int[] slots;
+	/** VM id -> key */
+	private double[] keys;
+	private int size;
+
+	/** No args contructor */
+	public VmLoadIndex(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity number of VMs to reserve space for
+	 */
+	public VmLoadIndex(int initialCapacity){
+		int capacity = Math.max(1, initialCapacity);
+		heap = new int[capacity];
+		slots = new int[capacity];
+		keys = new double[capacity];
+	}
+
+	/**
+	 * @return the number of VMs in the index
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Adds VMs with ids from the current size up to <code>vmCount - 1</code>, each with a key of 0.
+	 * Does nothing if the index already holds that many VMs.
+	 *
+	 * @param vmCount the number of VMs the index should hold
+	 */
+	public void ensureSize(int vmCount){
+		if (vmCount <= size){
+			return;
+		}
+
+		if (vmCount > heap.length){
+			int newCapacity = Math.max(vmCount, heap.length * 2);
+			heap = Arrays.copyOf(heap, newCapacity);
+			slots = Arrays.copyOf(slots, newCapacity);
+			keys = Arrays.copyOf(keys, newCapacity);
+		}
+
+		while (size < vmCount){
+			int vmId = size;
+			keys[vmId] = 0;
+			heap[size] = vmId;
+			slots[vmId] = size;
+			size++;
+			siftUp(slots[vmId]);
+		}
+	}
+
+	/**
+	 * @param vmId
+	 * @return the current key of the VM
+	 */
+	public double getKey(int vmId){
+		return keys[vmId];
+	}
+
+	/**
+	 * Changes the key of a VM and restores the heap order.
+	 *
+	 * @param vmId
+	 * @param key
+	 */
+	public void setKey(int vmId, double key){
+		double oldKey = keys[vmId];
+		keys[vmId] = key;
+		if (key < oldKey){
+			siftUp(slots[vmId]);
+		} else if (key > oldKey){
+			siftDown(slots[vmId]);
+		}
+	}
+
+	/**
+	 * @return id of the VM with the smallest key, or -1 if the index is empty
+	 */
+	public int peekMin(){
+		return (size == 0) ? -1 : heap[0];
+	}
+
+	private boolean less(int vmA, int vmB){
+		return (keys[vmA] < keys[vmB]) || (keys[vmA] == keys[vmB] && vmA < vmB);
+	}
+
+	private void siftUp(int slot){
+		int vmId = heap[slot];
+		while (slot > 0){
+			int parent = (slot - 1) >>> 1;
+			int parentVm = heap[parent];
+			if (!less(vmId, parentVm)){
+				break;
+			}
+			heap[slot] = parentVm;
+			slots[parentVm] = slot;
+			slot = parent;
+		}
+		heap[slot] = vmId;
+		slots[vmId] = slot;
+	}
+
+	private void siftDown(int slot){
+		int vmId = heap[slot];
+		int half = size >>> 1;
+		while (slot < half){
+			int child = 2 * slot + 1;
+			int childVm = heap[child];
+			int right = child + 1;
+			if (right < size && less(heap[right], childVm)){
+				child = right;
+				childVm = heap[child];
+			}
+			if (!less(childVm, vmId)){
+				break;
+			}
+			heap[slot] = childVm;
+			slots[childVm] = slot;
+			slot = child;
+		}
+		heap[slot] = vmId;
+		slots[vmId] = slot;
+	}
+}
@@ -0,0 +1,135 @@
+package cloudsim.ext.datacenter;
+
+import java.util.Arrays;
+
+/**
+ * Roulette wheel selection over a set of non negative weights, backed by a Fenwick (binary indexed)
+ * tree. Changing a weight and drawing a sample both cost O(log n) and allocate nothing.
+ *
+ * The tree is rebuilt from the raw weights every {@link #REBUILD_INTERVAL} updates so that rounding
+ * errors from incremental updates do not accumulate.
+ */
+public class WeightedSampler {
+	static final int REBUILD_INTERVAL = 1 << 16;
+
+	private double[] weights;
+	/** 1-based Fenwick tree over weights */
+	private double[] tree;
+	private int size;
+	private int updatesSinceRebuild;
+
+	/** No args contructor */
+	public WeightedSampler(){
+		weights = new double[0];
+		tree = new double[1];
+	}
+
+	/**
+	 * @return the number of weights
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Grows the sampler to hold <code>newSize</code> weights. New weights are 0.
+	 *
+	 * @param newSize
+	 */
+	public void ensureSize(int newSize){
+		if (newSize <= size){
+			return;
+		}
+
+		weights = Arrays.copyOf(weights, newSize);
+		size = newSize;
+		rebuild();
+	}
+
+	/**
+	 * @param index
+	 * @return the weight at the index
+	 */
+	public double get(int index){
+		return weights[index];
+	}
+
+	/**
+	 * Sets a weight. Negative weights are treated as 0.
+	 *
+	 * @param index
+	 * @param weight
+	 */
+	public void set(int index, double weight){
+		if (weight < 0){
+			weight = 0;
+		}
+
+		double delta = weight - weights[index];
+		weights[index] = weight;
+		if (delta == 0){
+			return;
+		}
+
+		if (++updatesSinceRebuild >= REBUILD_INTERVAL){
+			rebuild();
+			return;
+		}
+		for (int i = index + 1; i <= size; i += i & (-i)){
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * @return the sum of all weights
+	 */
+	public double total(){
+		double sum = 0.0;
+		for (int i = size; i > 0; i -= i & (-i)){
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Selects an index with probability proportional to its weight.
+	 *
+	 * @param u a uniform random number in [0, 1)
+	 * @return the selected index, or -1 if all weights are 0
+	 */
+	public int sample(double u){
+		double total = total();
+		if (!(total > 0)){
+			return -1;
+		}
+		double target = u * total;
+
+		int pos = 0;
+		for (int step = Integer.highestOneBit(size); step > 0; step >>= 1){
+			int next = pos + step;
+			if (next <= size && tree[next] <= target){
+				pos = next;
+				target -= tree[next];
+			}
+		}
+
+		// pos is now the number of leading weights whose sum does not exceed the target
+		return Math.min(pos, size - 1);
+	}
+
+	private void rebuild(){
+		if (tree.length != size + 1){
+			tree = new double[size + 1];
+		} else {
+			Arrays.fill(tree, 0.0);
+		}
+		for (int i = 1; i <= size; i++){
+			tree[i] += weights[i - 1];
+			int parent = i + (i & (-i));
+			if (parent <= size){
+				tree[parent] += tree[i];
+			}
+		}
+		updatesSinceRebuild = 0;
+	}
+}
@@ -1,63 +1,86 @@
 package cloudsim.ext.datacenter;
 import java.util.*;
 
-import cloudsim.ext.Constants;
-import cloudsim.ext.event.CloudSimEvent;
-import cloudsim.ext.event.CloudSimEventListener;
-import cloudsim.ext.event.CloudSimEvents;
+import cloudsim.ext.event.VmAllocationListener;
 
-public class honeyBee extends VmLoadBalancer implements CloudSimEventListener {
-	private int cutoff = 1;
+/**
+ * Honey Bee Foraging load balancer.
+ *
+ * The current food source (scout bee VM) keeps receiving cloudlets until it has <code>cutoff</code>
+ * cloudlets in progress. Then the employed bees evaluate every VM and the onlooker bees move to the
+ * fittest one. Fitness is kept up to date in a {@link VmLoadIndex} from the allocation and finish
+ * events, so finding the fittest VM (the waggle dance) is a constant time peek.
+ */
+public class honeyBee extends VmLoadBalancer implements VmAllocationListener {
+
+	/** Calculates the fitness of a VM. Lower values are fitter. */
+	public interface FitnessFunction {
+		double calculateFitness(int vmId, int allocatedCloudlets);
+	}
+
+	/** Default fitness, the number of cloudlets currently allocated to the VM */
+	public static final FitnessFunction ALLOCATED_CLOUDLETS = new FitnessFunction(){
+		public double calculateFitness(int vmId, int allocatedCloudlets){
+			return allocatedCloudlets;	//// tasklength/VM capacity
+		}
+	};
+
+	private int cutoff = Integer.getInteger("cloudsim.ext.hbf.cutoff", 1);
 	private int scoutBee = -1;
 	private Map<Integer, VirtualMachineState> vmStatesList;
-	Map<Integer, Integer> vmAllocationCounts = new HashMap<Integer, Integer> ();
-	Map<Integer, Integer> fitness = new HashMap<Integer, Integer> ();
-	
-	
+	private FitnessFunction fitnessFunction = ALLOCATED_CLOUDLETS;
+	private VmLoadIndex fitness = new VmLoadIndex();
+
+
 	public honeyBee(DatacenterController dcb){
+		super(true);
 		this.vmStatesList = dcb.getVmStatesList();
-		dcb.addCloudSimEventListener(this);
+		dcb.addVmAllocationListener(this);
 	}
 
-	
+
 	@Override
 	public int getNextAvailableVm(){
 		int vmId = -1;
 		vmId = getScoutBee();
 		scoutBee = vmId;
-		allocatedVm(vmId);
-		System.out.println("allocated "+vmId);
+		if (vmId != -1){
+			allocatedVm(vmId);
+		}
+		if (logAllocations){
+			System.out.println("allocated "+vmId);
+		}
 		return vmId;
 	}
-	
-	public void cloudSimEventFired(CloudSimEvent e) {
-		if (e.getId() == CloudSimEvents.EVENT_CLOUDLET_ALLOCATED_TO_VM){
-			int vmId = (Integer) e.getParameter(Constants.PARAM_VM_ID);
-			int countCloudlets;
-			if(vmAllocationCounts.get(vmId)==null)
-				countCloudlets = 0;
-			else
-				countCloudlets = vmAllocationCounts.get(vmId);
-			vmAllocationCounts.put(vmId,countCloudlets+1);
-			if(vmAllocationCounts.get(vmId)>cutoff)
-				vmStatesList.put(vmId, VirtualMachineState.BUSY);
-		} else if (e.getId() == CloudSimEvents.EVENT_VM_FINISHED_CLOUDLET){
-			int vmId = (Integer) e.getParameter(Constants.PARAM_VM_ID);
-			int countCloudlets = vmAllocationCounts.get(vmId);
-			vmAllocationCounts.put(vmId,countCloudlets-1);
-			if(vmAllocationCounts.get(vmId)<cutoff)
-				vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+
+	public void onAllocated(int vmId) {
+		int countCloudlets = vmAllocationCounts.incrementLive(vmId);
+		updateFitness(vmId);
+		if(countCloudlets>cutoff)
+			vmStatesList.put(vmId, VirtualMachineState.BUSY);
+	}
+
+	public void onFinished(int vmId) {
+		int countCloudlets = vmAllocationCounts.decrementLive(vmId);
+		updateFitness(vmId);
+		if(countCloudlets<cutoff)
+			vmStatesList.put(vmId, VirtualMachineState.AVAILABLE);
+	}
+
+	private void updateFitness(int vmId){
+		if (vmId < fitness.size()){
+			fitness.setKey(vmId, fitnessFunction.calculateFitness(vmId, vmAllocationCounts.getLive(vmId)));
 		}
 	}
-		
+
 	private boolean isSendScoutBees(int scoutBee)
 	{
-		if((vmAllocationCounts.get(scoutBee)==null)||(vmAllocationCounts.get(scoutBee) < cutoff))
+		if(vmAllocationCounts.getLive(scoutBee) < cutoff)
 			return false;
 		else
 			return true;
 	}
-	
+
 	/* This will return food source */
 	int getScoutBee()
 	{
@@ -79,60 +102,55 @@ public class honeyBee extends VmLoadBalancer implements CloudSimEventListener {
 			}
 		}
 	}
-	
-	int MemorizeBestSource() 
+
+	int MemorizeBestSource()
 	{
 		return waggleDance();
 	}
-	
+
 	/* These are the bees which will observe Waggle Dance and give us best source */
 	int SendOnlookerBees()
 	{
 		return MemorizeBestSource();
 	}
-	
-	// Calculation to get the fitness value of VM
-	void calculation()
-	{
-		  int i;
-		  /*Employed Bee Phase*/
-		  for (i=0;i<vmStatesList.size();i++)
-		  {
-			   if(vmAllocationCounts.get(i)==null)
-				   fitness.put(i, 0);
-			   else
-				   fitness.put(i, calculateFitness(vmAllocationCounts.get(i)));
-		  }
-	}
-	
-	int calculateFitness(int solValue)
-	{
-//		solValue = 1/(1000-solValue);
-		return solValue;	//// tasklength/VM capacity
-	}
-	
-	// Bees went in search & finding all the fitness
+
+	// Bees went in search & finding all the fitness.
+	// Fitness of known VMs is kept current by the events, only newly created VMs need evaluating.
 	void SendEmployedBees()
 	{
-	  fitness.clear();
-	  calculation();
+		int vmCount = vmStatesList.size();
+		int oldCount = fitness.size();
+		if (vmCount > oldCount){
+			vmAllocationCounts.ensureCapacity(vmCount);
+			fitness.ensureSize(vmCount);
+			for (int i = oldCount; i < vmCount; i++){
+				updateFitness(i);
+			}
+		}
 	}
 
-	
+
 	// By waggle Dance, we are getting best VM available
-	private int waggleDance() 
+	private int waggleDance()
 	{
-		int Min, i=0;
-		Min = 0;
-		int global = fitness.get(0);
-		for(i=1;i<vmStatesList.size();i++)
-		{
-				if(fitness.get(i)< global)
-				{
-					global = fitness.get(i);
-					Min = i;
-				}
+		int best = fitness.peekMin();
+		return (best == -1) ? 0 : best;
+	}
+
+	/**
+	 * @param cutoff number of cloudlets a VM may have in progress before the bees look for another one
+	 */
+	public void setCutoff(int cutoff){
+		this.cutoff = cutoff;
+	}
+
+	/**
+	 * @param fitnessFunction function used to evaluate the VMs
+	 */
+	public void setFitnessFunction(FitnessFunction fitnessFunction){
+		this.fitnessFunction = fitnessFunction;
+		for (int i = 0; i < fitness.size(); i++){
+			updateFitness(i);
 		}
-		return Min;
 	}
-}
\ No newline at end of file
+}
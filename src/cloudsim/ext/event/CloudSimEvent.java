@@ -4,11 +4,19 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
+import cloudsim.ext.Constants;
+
+/**
+ * Event passed to {@link CloudSimEventListener}s. Parameters are kept in a map, except for the
+ * VM id which has a primitive slot so that frequent VM events can reuse a single instance 
+ * without allocating. Listeners must not keep a reference to an event after it was fired.
+ */
 public class CloudSimEvent implements Serializable {
 	private static final long serialVersionUID = 1710001127028361171L;
 	
 	private int id;
 	private Map<String, Object> parameters;
+	private int vmId = -1;
 
 	public CloudSimEvent(int id) {
 		super();
@@ -31,6 +39,23 @@ public class CloudSimEvent implements Serializable {
 	}
 
 	
+	/**
+	 * @return the VM id of the event, or -1 if there is none
+	 */
+	public int getVmId() {
+		return vmId;
+	}
+
+	/**
+	 * Sets the VM id, which is also returned as the {@link Constants#PARAM_VM_ID} parameter.
+	 * 
+	 * @param vmId
+	 */
+	public void setVmId(int vmId) {
+		this.vmId = vmId;
+	}
+
+	
 	public void addParameter(String name, Object value){
 		if (parameters == null){
 			parameters = new HashMap<String, Object>();
@@ -40,11 +65,12 @@ public class CloudSimEvent implements Serializable {
 	}
 	
 	public Object getParameter(String name){
-		if (parameters == null){
-			return null;
+		Object value = (parameters == null) ? null : parameters.get(name);
+		if (value == null && vmId != -1 && Constants.PARAM_VM_ID.equals(name)){
+			return vmId;
 		}
 		
-		return parameters.get(name);
+		return value;
 	}
 
 }
@@ -0,0 +1,23 @@
+package cloudsim.ext.event;
+
+/**
+ * Typed listener for cloudlets being allocated to and finished by VMs. Unlike 
+ * {@link CloudSimEventListener} no event object is involved, so notifications 
+ * cost a method call and nothing else.
+ */
+public interface VmAllocationListener {
+
+	/**
+	 * A cloudlet has been sent to a VM.
+	 * 
+	 * @param vmId
+	 */
+	void onAllocated(int vmId);
+	
+	/**
+	 * A VM has finished a cloudlet.
+	 * 
+	 * @param vmId
+	 */
+	void onFinished(int vmId);
+}
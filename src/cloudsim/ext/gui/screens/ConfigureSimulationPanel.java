@@ -39,6 +39,7 @@ import javax.swing.table.TableColumnModel;
 
 import cloudsim.ext.Constants;
 import cloudsim.ext.Simulation;
+import cloudsim.ext.datacenter.VmLoadBalancerRegistry;
 import cloudsim.ext.event.CloudSimEvent;
 import cloudsim.ext.event.CloudSimEventListener;
 import cloudsim.ext.event.CloudSimEvents;
@@ -432,12 +433,7 @@ public class ConfigureSimulationPanel extends JPanel
 		x += compW + vGap;
 		compW = 240;
 		compH = 25;
-		cmbLoadBalancingPolicy = new JComboBox(new String[]{
-				Constants.LOAD_BALANCE_ANT_COLONY,
-				Constants.LOAD_BALANCE_HONEY_COLONY,
-				Constants.LOAD_BALANCE_MIN_MIN,
-				Constants.LOAD_BALANCE_MAX_MIN
-		});
+		cmbLoadBalancingPolicy = new JComboBox(VmLoadBalancerRegistry.getPolicyNames().toArray());
 		cmbLoadBalancingPolicy.setSelectedItem(simulation.getLoadBalancePolicy());
 		cmbLoadBalancingPolicy.setBounds(x, y, compW, compH);
 		advancedTab.add(cmbLoadBalancingPolicy);
@@ -35,12 +35,19 @@ public class BestResponseTimeServiceBroker extends ServiceProximityServiceBroker
 		super();
 	}
 	
+	/**
+	 * @param internetCharacteristics the network model of the simulation
+	 */
+	public BestResponseTimeServiceBroker(InternetCharacteristics internetCharacteristics) throws Exception {
+		super(internetCharacteristics);
+	}
+	
 	@Override
 	protected void init(){
 		super.init();
 		
 		this.allDataCenters = new HashMap<String, Integer>();
-		List<GeoLocatable> allInternetEntities = InternetCharacteristics.getInstance().getAllEntities();
+		List<GeoLocatable> allInternetEntities = internetCharacteristics.getAllEntities();
 		int region;
 		String name;
 		
@@ -60,7 +67,6 @@ public class BestResponseTimeServiceBroker extends ServiceProximityServiceBroker
 		String closestDc;
 		double coolOffTime = COOL_OFF_TIME;
 		double currTime = GridSim.clock();
-		InternetCharacteristics internetCharacteristics = InternetCharacteristics.getInstance();
 		
 		//Get the closest DC
 		closestDc = super.getDestination(inquirer);
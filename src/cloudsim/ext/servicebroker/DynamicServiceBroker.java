@@ -23,7 +23,15 @@ public class DynamicServiceBroker extends ServiceProximityServiceBroker
 	private int maxVms = 100;
 	
 	public DynamicServiceBroker(List<DatacenterController> dcbs){
-		super();
+		this(dcbs, InternetCharacteristics.getInstance());
+	}
+	
+	/**
+	 * @param dcbs
+	 * @param internetCharacteristics the network model of the simulation
+	 */
+	public DynamicServiceBroker(List<DatacenterController> dcbs, InternetCharacteristics internetCharacteristics){
+		super(internetCharacteristics);
 		
 		bestResponseTimes = new HashMap<String, Double>();
 		
@@ -46,7 +54,7 @@ public class DynamicServiceBroker extends ServiceProximityServiceBroker
 	}
 	
 	private void checkLatencyStatus(){
-		Map<String, Double[]> serviceLatencies = InternetCharacteristics.getInstance().getServiceLatencies();
+		Map<String, Double[]> serviceLatencies = internetCharacteristics.getServiceLatencies();
 		
 		
 		Double bestSoFar;
@@ -12,15 +12,24 @@ import cloudsim.ext.datacenter.DatacenterController;
 public class ServiceProximityServiceBroker implements CloudAppServiceBroker {
 
 	protected Map<Integer, List<String>> regionalDataCenterIndex = null;
+	protected InternetCharacteristics internetCharacteristics;
 	
 	public ServiceProximityServiceBroker(){
+		this(InternetCharacteristics.getInstance());
+	}
+	
+	/**
+	 * @param internetCharacteristics the network model of the simulation
+	 */
+	public ServiceProximityServiceBroker(InternetCharacteristics internetCharacteristics){
+		this.internetCharacteristics = internetCharacteristics;
 		regionalDataCenterIndex = new HashMap<Integer, List<String>>();
 		
 		init();
 	}
 	
 	protected void init(){
-		List<GeoLocatable> allInternetEntities = InternetCharacteristics.getInstance().getAllEntities();
+		List<GeoLocatable> allInternetEntities = internetCharacteristics.getAllEntities();
 		int region;
 		
 		for (GeoLocatable entity : allInternetEntities){
@@ -37,7 +46,7 @@ public class ServiceProximityServiceBroker implements CloudAppServiceBroker {
 	}
 	
 	public String getDestination(GeoLocatable inquirer) {
-		List<Integer> proximityList = InternetCharacteristics.getInstance().getProximityList(inquirer.getRegion());
+		List<Integer> proximityList = internetCharacteristics.getProximityList(inquirer.getRegion());
 		
 		int region;
 		String dcName;
@@ -22,4 +22,30 @@ public class HourlyStat {
 		
 		stat.update((measureName + Constants.STANDARD_SEPARATOR + hour), startTime, endTime);
 	}
+	
+	/**
+	 * Records a state held from startTime to endTime, for {@link Sim_stat#STATE_BASED} measures.
+	 * Periods crossing an hour boundary are split between the hours.
+	 */
+	public void updateState(double value, double startTime, double endTime){
+		while (startTime < endTime){
+			double hourEnd = (Math.floor(startTime / Constants.MILLI_SECONDS_TO_HOURS) + 1) * Constants.MILLI_SECONDS_TO_HOURS;
+			double end = Math.min(hourEnd, endTime);
+			int hour = (int) Math.floor( (startTime / Constants.MILLI_SECONDS_TO_HOURS) % 24);
+			
+			stat.update((measureName + Constants.STANDARD_SEPARATOR + hour), value, startTime, end);
+			startTime = end;
+		}
+	}
+	
+	/**
+	 * @return the average of the measure for each hour of the day
+	 */
+	public double[] getHourlyAverages(){
+		double[] averages = new double[24];
+		for (int i = 0; i < 24; i++){
+			averages[i] = stat.average(measureName + Constants.STANDARD_SEPARATOR + i);
+		}
+		return averages;
+	}
 }